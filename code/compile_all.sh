@@ -3,4 +3,4 @@ if ! [ -d classes ];
 then
    mkdir classes
 fi
-javac -cp . -d classes ir/Engine.java ir/HashedIndex.java ir/HITSRanker.java ir/Index.java ir/Indexer.java ir/KGramIndex.java ir/KGramPostingsEntry.java ir/NormalizationType.java ir/PersistentHashedIndex.java ir/PostingsEntry.java ir/PostingsList.java ir/Query.java ir/QueryType.java ir/RankingType.java ir/Searcher.java ir/SearchGUI.java ir/SpellChecker.java ir/SpellingOptionsDialog.java ir/Tokenizer.java ir/TokenTest.java ir/PageRank.java 
+javac -cp . -d classes ir/Engine.java ir/HashedIndex.java ir/HITSRanker.java ir/Index.java ir/Indexer.java ir/KGramIndex.java ir/KGramPostingsEntry.java ir/NormalizationType.java ir/PersistentHashedIndex.java ir/PostingsEntry.java ir/PostingsList.java ir/Query.java ir/QueryType.java ir/RankingType.java ir/Searcher.java ir/SearchGUI.java ir/SpellChecker.java ir/SpellingOptionsDialog.java ir/Tokenizer.java ir/TokenTest.java ir/PageRank.java ir/PositionsReader.java ir/VariableByte.java ir/PostingsIterator.java ir/ListPostingsIterator.java ir/ConjunctionIterator.java ir/DisjunctionIterator.java ir/PhraseIterator.java ir/ExclusionIterator.java ir/QueryNode.java ir/QueryParser.java ir/TermStatistics.java ir/BitSetIterator.java ir/QueryPlan.java ir/QueryPlanner.java ir/StaticScores.java ir/LinkGraph.java ir/PageRankBenchmark.java ir/MonteCarloPageRank.java ir/StaticScoreFile.java ir/TitleMap.java ir/Graph.java ir/CompressedGraph.java ir/GraphDelta.java ir/IncrementalPageRank.java ir/BlockPageRank.java ir/DistributedPageRank.java ir/ChampionLists.java ir/DocOrder.java ir/BM25.java ir/ForwardIndex.java ir/FeedbackEngine.java 
@@ -0,0 +1,89 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.util.Map;
+
+/**
+ * The Okapi BM25 term weights. A term with frequency tf in document d
+ * scores
+ *
+ *   idf * tf * (k1 + 1) / (tf + k1 * (1 - b + b * len_d / avglen))
+ *
+ * The denominator's length part is kept per document in norms, so that
+ * scoring a posting costs one array read. The collection statistics are
+ * taken once from the document lengths; k1 and b can be changed at any
+ * time, which only recomputes norms.
+ */
+public class BM25 {
+
+    public static final double K1 = 1.2;
+    public static final double B = 0.75;
+
+    double k1 = K1;
+    double b = B;
+
+    /** Number of documents and their average length. */
+    int numDocs = 0;
+    double avgLength = 0;
+
+    /** k1 * (1 - b + b * len_d / avglen) of each docID. */
+    float[] norms;
+
+    /**
+     * Takes N and the average document length from docLengths, and keeps
+     * the lengths as the LENGTHS static score column.
+     */
+    public void join(Map<Integer, Integer> docLengths) {
+        int n = 0;
+        for (int docID : docLengths.keySet()) {
+            n = Math.max(n, docID + 1);
+        }
+        float[] lengths = new float[n];
+        long total = 0;
+        for (Map.Entry<Integer, Integer> e : docLengths.entrySet()) {
+            lengths[e.getKey()] = e.getValue();
+            total += e.getValue();
+        }
+        numDocs = docLengths.size();
+        avgLength = numDocs == 0 ? 0 : (double) total / numDocs;
+        Index.staticScores.put(StaticScores.LENGTHS, lengths);
+        computeNorms();
+    }
+
+    public boolean isJoined() {
+        return norms != null && Index.staticScores.has(StaticScores.LENGTHS);
+    }
+
+    public void setParameters(double k1, double b) {
+        this.k1 = k1;
+        this.b = b;
+        if (Index.staticScores.has(StaticScores.LENGTHS)) {
+            computeNorms();
+        }
+    }
+
+    private void computeNorms() {
+        float[] lengths = Index.staticScores.get(StaticScores.LENGTHS);
+        norms = new float[lengths.length];
+        for (int d = 0; d < lengths.length; d++) {
+            norms[d] = (float) (k1 * (1 - b + b * (avgLength == 0 ? 1 : lengths[d] / avgLength)));
+        }
+    }
+
+    /** The idf of a term in df documents, never negative. */
+    public double idf(int df) {
+        df = Math.min(df, numDocs);
+        return Math.log(1 + (numDocs - df + 0.5) / (df + 0.5));
+    }
+
+    /** The saturated tf part of the score; weight is the idf times the query weight. */
+    public double score(int doc, int tf, double weight) {
+        return weight * tf * (k1 + 1) / (tf + norms[doc]);
+    }
+}
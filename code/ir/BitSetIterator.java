@@ -0,0 +1,65 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.util.BitSet;
+
+/**
+ * Iterates over the documents of a bitmap. Used for very frequent terms,
+ * where probing a bit is cheaper than merging a long list; there are no
+ * term frequencies or positions.
+ */
+public class BitSetIterator extends PostingsIterator {
+
+    private final BitSet bits;
+
+    private final long cost;
+
+    private int doc = -1;
+
+    public BitSetIterator(BitSet bits, long cost) {
+        this.bits = bits;
+        this.cost = cost;
+    }
+
+    /** Reads all documents of an iterator into a bitmap. */
+    public static BitSet toBitSet(PostingsIterator it) {
+        BitSet bits = new BitSet();
+        for (int doc = it.nextDoc(); doc != NO_MORE_DOCS; doc = it.nextDoc()) {
+            bits.set(doc);
+        }
+        return bits;
+    }
+
+    public int docID() {
+        return doc;
+    }
+
+    public int nextDoc() {
+        return advance(doc + 1);
+    }
+
+    public int advance(int target) {
+        touched++;
+        int next = bits.nextSetBit(target);
+        doc = next == -1 ? NO_MORE_DOCS : next;
+        return doc;
+    }
+
+    public int freq() {
+        return 1;
+    }
+
+    public int nextPosition() {
+        return -1;
+    }
+
+    public long cost() {
+        return cost;
+    }
+}
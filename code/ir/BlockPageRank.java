@@ -0,0 +1,355 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Computes PageRank for graphs whose links and rank vectors do not fit in
+ * memory, with the block-based strategy of Haveliwala, "Efficient
+ * computation of PageRank" (1999).
+ *
+ * The nodes are split into blocks of blockSize consecutive numbers, and
+ * the links into one partition file per destination block. Every record
+ * of a partition holds the links of one source into the block:
+ *
+ *   source, outdegree of source, count, count offsets in the block
+ *
+ * An iteration streams the partitions one at a time through a memory
+ * map, reading the old ranks of the sources from a mapped file, and only
+ * keeps the new ranks of the current block in memory before writing
+ * them to the next rank file.
+ */
+public class BlockPageRank {
+
+    /** Bytes of a partition mapped at a time. */
+    final static int WINDOW = 1 << 26;
+
+    /** Doubles of a rank file mapped as one buffer. */
+    final static int CHUNK = 1 << 24;
+
+    /** The directory of the partitions and the rank files. */
+    final File dir;
+
+    final int blockSize;
+
+    int numNodes;
+
+    int numBlocks;
+
+    long numEdges;
+
+    /** The nodes without outlinks. */
+    BitSet dangling;
+
+    /** Number of iterations done by the last run. */
+    int iterations;
+
+    /** Bytes read from the partitions in the last iteration. */
+    long bytesRead;
+
+    /** The rank file holding the result of the last iteration. */
+    private File result;
+
+    private BlockPageRank(File dir, int blockSize) {
+        this.dir = dir;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Partitions a links file into dir in two streaming passes: the first
+     * numbers the nodes in titles and counts outdegrees, the second writes
+     * every link to the partition of its target. Duplicate links within a
+     * line are kept once, like LinkGraph.read().
+     */
+    public static BlockPageRank partition(String linksFilename, TitleMap titles, File dir, int blockSize) throws IOException {
+        BlockPageRank blocks = new BlockPageRank(dir, blockSize);
+        int[][] degree = { new int[1 << 10] };
+        long[] numEdges = { 0 };
+        LinkGraph.scan(linksFilename, titles, (source, targets, count) -> {
+            int unique = unique(targets, count);
+            if (degree[0].length <= source) {
+                degree[0] = Arrays.copyOf(degree[0], Math.max(2 * degree[0].length, source + 1));
+            }
+            degree[0][source] += unique;
+            numEdges[0] += unique;
+        });
+        blocks.init(titles.size(), Arrays.copyOf(degree[0], titles.size()), numEdges[0]);
+
+        DataOutputStream[] out = blocks.openPartitions();
+        try {
+            int[] outDegree = degree[0];
+            LinkGraph.scan(linksFilename, titles, (source, targets, count) ->
+                    blocks.write(out, source, outDegree[source], targets, unique(targets, count)));
+        } finally {
+            for (DataOutputStream o : out) {
+                o.close();
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Partitions a graph that is already in memory, for benchmarks.
+     */
+    public static BlockPageRank partition(Graph graph, File dir, int blockSize) throws IOException {
+        BlockPageRank blocks = new BlockPageRank(dir, blockSize);
+        int n = graph.numNodes();
+        int[] degree = new int[n];
+        for (int i = 0; i < n; i++) {
+            degree[i] = graph.outDegree(i);
+        }
+        blocks.init(n, degree, graph.numEdges());
+        DataOutputStream[] out = blocks.openPartitions();
+        try {
+            int[] buffer = new int[16];
+            for (int i = 0; i < n; i++) {
+                if (buffer.length < degree[i]) {
+                    buffer = new int[2 * degree[i]];
+                }
+                int count = graph.successors(i, buffer);
+                blocks.write(out, i, degree[i], buffer, count);
+            }
+        } finally {
+            for (DataOutputStream o : out) {
+                o.close();
+            }
+        }
+        return blocks;
+    }
+
+    private void init(int numNodes, int[] degree, long numEdges) {
+        this.numNodes = numNodes;
+        this.numEdges = numEdges;
+        numBlocks = (numNodes + blockSize - 1) / blockSize;
+        dangling = new BitSet(numNodes);
+        for (int i = 0; i < numNodes; i++) {
+            if (degree[i] == 0) {
+                dangling.set(i);
+            }
+        }
+    }
+
+    private DataOutputStream[] openPartitions() throws IOException {
+        dir.mkdirs();
+        DataOutputStream[] out = new DataOutputStream[numBlocks];
+        for (int b = 0; b < numBlocks; b++) {
+            out[b] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partitionFile(b)), 1 << 13));
+        }
+        return out;
+    }
+
+    /**
+     * Writes the sorted links of a source to the partitions of their
+     * blocks, one record per block.
+     */
+    private void write(DataOutputStream[] out, int source, int degree, int[] targets, int count) throws IOException {
+        int k = 0;
+        while (k < count) {
+            int block = targets[k] / blockSize;
+            int end = k;
+            while (end < count && targets[end] / blockSize == block) {
+                end++;
+            }
+            DataOutputStream o = out[block];
+            o.writeInt(source);
+            o.writeInt(degree);
+            o.writeInt(end - k);
+            for (; k < end; k++) {
+                o.writeInt(targets[k] - block * blockSize);
+            }
+        }
+    }
+
+    /** Sorts the first count targets and moves the distinct ones first. */
+    private static int unique(int[] targets, int count) {
+        Arrays.sort(targets, 0, count);
+        int w = 0;
+        for (int k = 0; k < count; k++) {
+            if (k == 0 || targets[k] != targets[k - 1]) {
+                targets[w++] = targets[k];
+            }
+        }
+        return w;
+    }
+
+    private File partitionFile(int block) {
+        return new File(dir, "links." + block);
+    }
+
+    private File rankFile(int i) {
+        return new File(dir, "rank." + i);
+    }
+
+    /**
+     * Runs the power iteration from all probability in node 0, like
+     * PageRank.iterate(), until the L1 change is at most epsilon.
+     */
+    public void iterate(double bored, double epsilon, int maxIterations) throws IOException {
+        long startNanos = System.nanoTime();
+        File from = rankFile(0), to = rankFile(1);
+        from.delete();
+        to.delete();
+        try (RankFile start = new RankFile(from, numNodes)) {
+            if (numNodes > 0) {
+                start.set(0, 1);
+            }
+        }
+        double danglingMass = dangling.get(0) ? 1 : 0;
+        double[] block = new double[Math.min(blockSize, numNodes)];
+
+        double diff = 99;
+        int counter = 0;
+        while (diff > epsilon && maxIterations > counter) {
+            diff = 0;
+            bytesRead = 0;
+            double nextDangling = 0;
+            // bored surfers jump from linked docs, all surfers jump from dead ends
+            double jump = (bored * (1 - danglingMass) + danglingMass) / numNodes;
+            try (RankFile x = new RankFile(from, numNodes); RankFile xNext = new RankFile(to, numNodes)) {
+                for (int b = 0; b < numBlocks; b++) {
+                    int first = b * blockSize;
+                    int length = Math.min(blockSize, numNodes - first);
+                    Arrays.fill(block, 0, length, jump);
+                    pull(b, x, block, 1 - bored);
+                    for (int j = 0; j < length; j++) {
+                        diff += Math.abs(block[j] - x.get(first + j));
+                        if (dangling.get(first + j)) {
+                            nextDangling += block[j];
+                        }
+                        xNext.set(first + j, block[j]);
+                    }
+                }
+            }
+            danglingMass = nextDangling;
+            File tmp = from;
+            from = to;
+            to = tmp;
+            counter++;
+            System.out.printf("Iteration: %d Diff: %.3e Time: %.1f ms%n", counter, diff, (System.nanoTime() - startNanos) / 1e6);
+        }
+        iterations = counter;
+        result = from;
+        System.out.println("Iterations: " + counter);
+        System.out.println("Diff: " + diff);
+    }
+
+    /**
+     * Streams the partition of a block and adds what every source sends
+     * along its links into the block.
+     */
+    private void pull(int b, RankFile x, double[] block, double follow) throws IOException {
+        try (FileChannel channel = FileChannel.open(partitionFile(b).toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, size - position));
+                // a record is read only if it lies wholly in the window
+                while (buffer.remaining() >= 12) {
+                    int start = buffer.position();
+                    int source = buffer.getInt();
+                    int degree = buffer.getInt();
+                    int count = buffer.getInt();
+                    if (buffer.remaining() < 4L * count) {
+                        buffer.position(start);
+                        if (start > 0) {
+                            break;
+                        }
+                        // a record larger than a window gets a window of its own
+                        long length = 12 + 4L * count;
+                        if (length > Integer.MAX_VALUE || position + length > size) {
+                            throw new IOException("Cannot map the links of source " + source + " in " + partitionFile(b));
+                        }
+                        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                        continue;
+                    }
+                    double share = follow * x.get(source) / degree;
+                    for (int k = 0; k < count; k++) {
+                        block[buffer.getInt()] += share;
+                    }
+                }
+                if (buffer.position() == 0) {
+                    throw new IOException("Truncated record at " + position + " in " + partitionFile(b));
+                }
+                position += buffer.position();
+            }
+            bytesRead += size;
+        }
+    }
+
+    /**
+     * Returns the vector of the last run, read from its rank file.
+     */
+    public double[] scores() throws IOException {
+        double[] a = new double[numNodes];
+        try (RankFile x = new RankFile(result, numNodes)) {
+            for (int i = 0; i < numNodes; i++) {
+                a[i] = x.get(i);
+            }
+        }
+        return a;
+    }
+
+    /**
+     * Returns the total size of the partition files in bytes.
+     */
+    public long partitionBytes() {
+        long bytes = 0;
+        for (int b = 0; b < numBlocks; b++) {
+            bytes += partitionFile(b).length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Deletes the partitions, the rank files and dir if it is then empty.
+     */
+    public void delete() {
+        for (int b = 0; b < numBlocks; b++) {
+            partitionFile(b).delete();
+        }
+        rankFile(0).delete();
+        rankFile(1).delete();
+        dir.delete();
+    }
+
+    /**
+     * A vector of doubles in a file, mapped in chunks of CHUNK doubles
+     * since one map is limited to 2 GB.
+     */
+    private static class RankFile implements Closeable {
+        final FileChannel channel;
+        final MappedByteBuffer[] chunks;
+
+        RankFile(File file, int length) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            chunks = new MappedByteBuffer[(length + CHUNK - 1) / CHUNK];
+            for (int c = 0; c < chunks.length; c++) {
+                long first = (long) c * CHUNK;
+                chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE, first * Double.BYTES, Math.min(CHUNK, length - first) * Double.BYTES);
+            }
+        }
+
+        double get(int i) {
+            return chunks[i / CHUNK].getDouble((i % CHUNK) * Double.BYTES);
+        }
+
+        void set(int i, double value) {
+            chunks[i / CHUNK].putDouble((i % CHUNK) * Double.BYTES, value);
+        }
+
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The first tier of a tiered index: for every term, the r postings with
+ * the highest tf times static score (PageRank), kept in docID order.
+ * A ranked query that finds enough good documents here never reads the
+ * full postings lists.
+ *
+ * Every posting left out of the list of a term has tf times static score
+ * at most the cutoff of the term, which bounds what the documents outside
+ * the lists can score.
+ *
+ * The lists are stored in their own file:
+ *
+ *   MAGIC, number of terms, then for every term
+ *   term (DataOutput.writeUTF), cutoff (double), number of postings,
+ *   (docID gap, tf) per posting
+ */
+public class ChampionLists {
+
+    /** The champion lists file name, in PersistentHashedIndex.INDEXDIR. */
+    public static final String FNAME = "champions";
+
+    /** Number of postings kept per term by default. */
+    public static final int R = 64;
+
+    static final int MAGIC = 0x4348414d; // "CHAM"
+
+    /** The docIDs and term frequencies of the champions of each term. */
+    private final HashMap<String, int[][]> lists = new HashMap<String, int[][]>();
+
+    /** The cutoff of each term with postings left out of its list. */
+    private final HashMap<String, Double> cutoffs = new HashMap<String, Double>();
+
+    /** Total number of postings in all lists. */
+    long size = 0;
+
+    /**
+     * Picks the champions of every term from the full index, with a heap
+     * of r postings per term. Postings of documents with the same static
+     * score are ordered by tf.
+     *
+     * @param staticScore the static score of each docID
+     */
+    public static ChampionLists build(Index index, Collection<String> terms, float[] staticScore, int r) {
+        ChampionLists champions = new ChampionLists();
+        long[] heap = new long[r];
+        double[] keys = new double[r];
+        for (String term : terms) {
+            PostingsIterator it = index.iterator(term);
+            int size = 0;
+            boolean dropped = false;
+            for (int doc = it.nextDoc(); doc != PostingsIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+                int tf = it.freq();
+                double s = staticScore != null && doc < staticScore.length ? staticScore[doc] : 0;
+                double key = tf * s;
+                if (size < r) {
+                    keys[size] = key;
+                    heap[size] = ((long) doc << 32) | tf;
+                    siftUp(keys, heap, size++);
+                } else if (key > keys[0] || (key == keys[0] && tf > (int) heap[0])) {
+                    keys[0] = key;
+                    heap[0] = ((long) doc << 32) | tf;
+                    siftDown(keys, heap, size);
+                    dropped = true;
+                } else {
+                    dropped = true;
+                }
+            }
+            if (dropped) {
+                // the smallest key kept, which no dropped posting exceeds
+                champions.cutoffs.put(term, keys[0]);
+            }
+            long[] postings = Arrays.copyOf(heap, size);
+            Arrays.sort(postings);
+            int[][] list = new int[2][size];
+            for (int i = 0; i < size; i++) {
+                list[0][i] = (int) (postings[i] >>> 32);
+                list[1][i] = (int) postings[i];
+            }
+            champions.lists.put(term, list);
+            champions.size += size;
+        }
+        return champions;
+    }
+
+    private static void siftUp(double[] keys, long[] values, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!less(keys, values, i, parent)) {
+                break;
+            }
+            swap(keys, values, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(double[] keys, long[] values, int size) {
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && less(keys, values, child + 1, child)) {
+                child++;
+            }
+            if (!less(keys, values, child, i)) {
+                break;
+            }
+            swap(keys, values, i, child);
+            i = child;
+        }
+    }
+
+    /** Orders the heap by key, and by tf (the low half of the value) among equal keys. */
+    private static boolean less(double[] keys, long[] values, int i, int j) {
+        return keys[i] < keys[j] || (keys[i] == keys[j] && (int) values[i] < (int) values[j]);
+    }
+
+    private static void swap(double[] keys, long[] values, int i, int j) {
+        double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    /**
+     * Returns an iterator over the champions of a term, or null if the term
+     * has no champion list, so that the caller can use the full list.
+     */
+    public PostingsIterator iterator(String term) {
+        int[][] list = lists.get(term);
+        return list == null ? null : PostingsIterator.of(list[0], list[1]);
+    }
+
+    /**
+     * Returns the largest tf times static score of a posting of term left
+     * out of its list: 0 if the list is complete, and infinity if the term
+     * has no list.
+     */
+    public double cutoff(String term) {
+        if (!lists.containsKey(term)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return cutoffs.getOrDefault(term, 0.0);
+    }
+
+    /** Returns the number of terms with a champion list. */
+    public int numTerms() {
+        return lists.size();
+    }
+
+    public void write(String filename) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(lists.size());
+            for (Map.Entry<String, int[][]> e : lists.entrySet()) {
+                int[][] list = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeDouble(cutoffs.getOrDefault(e.getKey(), 0.0));
+                out.writeInt(list[0].length);
+                int last = 0;
+                for (int i = 0; i < list[0].length; i++) {
+                    out.writeInt(list[0][i] - last);
+                    out.writeInt(list[1][i]);
+                    last = list[0][i];
+                }
+            }
+        }
+    }
+
+    public static ChampionLists read(String filename) throws IOException {
+        ChampionLists champions = new ChampionLists();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a champion lists file: " + filename);
+            }
+            int numTerms = in.readInt();
+            for (int t = 0; t < numTerms; t++) {
+                String term = in.readUTF();
+                double cutoff = in.readDouble();
+                if (cutoff > 0) {
+                    champions.cutoffs.put(term, cutoff);
+                }
+                int[][] list = new int[2][in.readInt()];
+                int last = 0;
+                for (int i = 0; i < list[0].length; i++) {
+                    last += in.readInt();
+                    list[0][i] = last;
+                    list[1][i] = in.readInt();
+                }
+                champions.lists.put(term, list);
+                champions.size += list[0].length;
+            }
+        }
+        return champions;
+    }
+}
@@ -0,0 +1,122 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * A graph whose successor lists are gap encoded with variable byte codes,
+ * as in WebGraph (without reference compression). The list of a node is
+ * its out-degree, the first successor relative to the node itself, and
+ * the gaps between the following successors, minus one. An offset per
+ * node gives random access to the lists.
+ */
+public class CompressedGraph implements Graph {
+
+    final int numNodes;
+
+    final int numEdges;
+
+    /** Where the list of each node starts in data. */
+    final int[] offsets;
+
+    final byte[] data;
+
+    private CompressedGraph(int numNodes, int numEdges, int[] offsets, byte[] data) {
+        this.numNodes = numNodes;
+        this.numEdges = numEdges;
+        this.offsets = offsets;
+        this.data = data;
+    }
+
+    public static CompressedGraph compress(Graph graph) {
+        int n = graph.numNodes();
+        int[] offsets = new int[n];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] buffer = new int[16];
+        for (int i = 0; i < n; i++) {
+            offsets[i] = out.size();
+            int degree = graph.outDegree(i);
+            if (buffer.length < degree) {
+                buffer = new int[2 * degree];
+            }
+            graph.successors(i, buffer);
+            VariableByte.write(out, degree);
+            if (degree > 0) {
+                int first = buffer[0] - i;
+                VariableByte.write(out, (first << 1) ^ (first >> 31)); // zigzag
+                for (int k = 1; k < degree; k++) {
+                    VariableByte.write(out, buffer[k] - buffer[k - 1] - 1);
+                }
+            }
+        }
+        return new CompressedGraph(n, graph.numEdges(), offsets, out.toByteArray());
+    }
+
+    public int numNodes() {
+        return numNodes;
+    }
+
+    public int numEdges() {
+        return numEdges;
+    }
+
+    public int outDegree(int node) {
+        int pos = offsets[node];
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    public int successors(int node, int[] buffer) {
+        byte[] data = this.data;
+        int pos = offsets[node];
+        int degree = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos++];
+            degree |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        int previous = node;
+        for (int k = 0; k < degree; k++) {
+            int value = 0;
+            shift = 0;
+            do {
+                b = data[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            // the first successor is zigzagged, the others are gaps - 1
+            previous = k == 0 ? node + ((value >>> 1) ^ -(value & 1)) : previous + value + 1;
+            buffer[k] = previous;
+        }
+        return degree;
+    }
+
+    public Graph transpose() {
+        return compress(LinkGraph.of(this).transpose());
+    }
+
+    /** Bits per link used by the successor lists. */
+    public double bitsPerEdge() {
+        return 8.0 * data.length / Math.max(1, numEdges);
+    }
+
+    /** Bits per link used by the offset index. */
+    public double indexBitsPerEdge() {
+        return 32.0 * offsets.length / Math.max(1, numEdges);
+    }
+}
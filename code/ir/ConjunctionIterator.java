@@ -0,0 +1,92 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Matches the documents that all sub-iterators match. The sub-iterators are
+ * visited from the cheapest to the most expensive one, so the shortest list
+ * leads and the longer ones are only advanced to its candidates.
+ */
+public class ConjunctionIterator extends PostingsIterator {
+
+    private final List<PostingsIterator> subs;
+
+    private final PostingsIterator lead;
+
+    private int[] positions;
+
+    private int nextPosition;
+
+    public ConjunctionIterator(List<PostingsIterator> subs) {
+        this.subs = new ArrayList<PostingsIterator>(subs);
+        this.subs.sort((a, b) -> Long.compare(a.cost(), b.cost()));
+        this.lead = this.subs.get(0);
+    }
+
+    public int docID() {
+        return lead.docID();
+    }
+
+    public int nextDoc() {
+        return doNext(lead.nextDoc());
+    }
+
+    public int advance(int target) {
+        return doNext(lead.advance(target));
+    }
+
+    /**
+     * Advances the other iterators to <code>doc</code>; whenever one of
+     * them overshoots, the lead is moved up to it and we start over.
+     */
+    private int doNext(int doc) {
+        positions = null;
+        while (doc != NO_MORE_DOCS) {
+            boolean match = true;
+            for (int i = 1; i < subs.size(); i++) {
+                PostingsIterator sub = subs.get(i);
+                int other = sub.docID() < doc ? sub.advance(doc) : sub.docID();
+                if (other > doc) {
+                    doc = lead.advance(other);
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                return doc;
+            }
+        }
+        return NO_MORE_DOCS;
+    }
+
+    /** Sums the freqs of the sub-iterators, without decoding positions. */
+    public int freq() {
+        int freq = 0;
+        for (PostingsIterator sub : subs) {
+            if (sub.docID() == docID()) {
+                freq += sub.freq();
+            }
+        }
+        return freq;
+    }
+
+    public int nextPosition() {
+        if (positions == null) {
+            positions = mergePositions(subs, docID());
+            nextPosition = 0;
+        }
+        return positions[nextPosition++];
+    }
+
+    public long cost() {
+        return lead.cost();
+    }
+}
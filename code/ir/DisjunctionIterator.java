@@ -0,0 +1,104 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Matches the documents that at least one sub-iterator matches. The
+ * sub-iterators are kept in a priority queue on their current docID. The
+ * positions of a document are the merged positions of all sub-iterators
+ * standing on it.
+ */
+public class DisjunctionIterator extends PostingsIterator {
+
+    private final List<PostingsIterator> subs;
+
+    private final PriorityQueue<PostingsIterator> queue;
+
+    private int doc = -1;
+
+    private int[] positions;
+
+    private int nextPosition;
+
+    public DisjunctionIterator(List<PostingsIterator> subs) {
+        this.subs = new ArrayList<PostingsIterator>(subs);
+        this.queue = new PriorityQueue<PostingsIterator>(Math.max(1, subs.size()),
+                (a, b) -> Integer.compare(a.docID(), b.docID()));
+    }
+
+    public int docID() {
+        return doc;
+    }
+
+    public int nextDoc() {
+        if (doc == NO_MORE_DOCS) {
+            return doc;
+        }
+        return advance(doc + 1);
+    }
+
+    public int advance(int target) {
+        positions = null;
+        if (doc == -1) {
+            for (PostingsIterator sub : subs) {
+                sub.advance(target);
+                queue.add(sub);
+            }
+        } else {
+            while (!queue.isEmpty() && queue.peek().docID() < target) {
+                PostingsIterator sub = queue.poll();
+                sub.advance(target);
+                queue.add(sub);
+            }
+        }
+        doc = queue.isEmpty() ? NO_MORE_DOCS : queue.peek().docID();
+        return doc;
+    }
+
+    /** Returns the sub-iterators that stand on the current document. */
+    public List<PostingsIterator> matching() {
+        ArrayList<PostingsIterator> matching = new ArrayList<PostingsIterator>();
+        for (PostingsIterator sub : subs) {
+            if (sub.docID() == doc) {
+                matching.add(sub);
+            }
+        }
+        return matching;
+    }
+
+    /** Sums the freqs of the sub-iterators, without decoding positions. */
+    public int freq() {
+        int freq = 0;
+        for (PostingsIterator sub : subs) {
+            if (sub.docID() == doc) {
+                freq += sub.freq();
+            }
+        }
+        return freq;
+    }
+
+    public int nextPosition() {
+        if (positions == null) {
+            positions = mergePositions(subs, doc);
+            nextPosition = 0;
+        }
+        return positions[nextPosition++];
+    }
+
+    public long cost() {
+        long cost = 0;
+        for (PostingsIterator sub : subs) {
+            cost += sub.cost();
+        }
+        return cost;
+    }
+}
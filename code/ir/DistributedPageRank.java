@@ -0,0 +1,422 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+/**
+ * Computes PageRank with several worker processes on the same machine.
+ *
+ * The coordinator splits the nodes into ranges with about as many links
+ * each, starts one JVM per range, and sends every worker the out-links
+ * of its nodes over a loopback socket. For every other worker it also
+ * sends the sorted list of that worker's nodes this worker links to (its
+ * boundary), and the list of its own nodes the other worker links to.
+ *
+ * In an iteration each worker pushes the rank of its nodes along their
+ * links. What lands on its own nodes is added locally; what lands on
+ * boundary nodes is summed per node and sent as one double per boundary
+ * node, in boundary order, through the coordinator to the owner. The
+ * coordinator also adds up the mass of the dead ends for the random jump
+ * and the L1 change of each worker, and stops them all when the total
+ * change is below epsilon.
+ *
+ * Started as a worker with: DistributedPageRank port workerNumber
+ */
+public class DistributedPageRank {
+
+    final LinkGraph graph;
+
+    final int numWorkers;
+
+    /** Probability that the surfer jumps to a random node. */
+    final double bored;
+
+    /** Number of iterations done by the last run. */
+    int iterations;
+
+    /** Bytes sent between the coordinator and the workers to set up the last run. */
+    long setupBytes;
+
+    /** Bytes sent between the coordinator and the workers during the iterations of the last run. */
+    long iterationBytes;
+
+    /** Time of the iterations of the last run, without starting and setting up the workers. */
+    double iterationMs;
+
+    public DistributedPageRank(LinkGraph graph, int numWorkers, double bored) {
+        this.graph = graph;
+        this.numWorkers = Math.max(1, Math.min(numWorkers, Math.max(1, graph.numNodes)));
+        this.bored = bored;
+    }
+
+    /**
+     * Returns the first node of every worker, and numNodes last, so that
+     * every worker gets about as many links.
+     */
+    int[] split() {
+        int[] bounds = new int[numWorkers + 1];
+        int node = 0;
+        for (int p = 1; p < numWorkers; p++) {
+            long edges = (long) graph.numEdges() * p / numWorkers;
+            while (node < graph.numNodes && graph.offsets[node] < edges) {
+                node++;
+            }
+            bounds[p] = Math.max(node, bounds[p - 1]);
+        }
+        bounds[numWorkers] = graph.numNodes;
+        return bounds;
+    }
+
+    /**
+     * Returns, for every pair of workers p and q, the sorted nodes of q
+     * that nodes of p link to.
+     */
+    int[][][] boundaries(int[] bounds) {
+        int[][][] boundary = new int[numWorkers][numWorkers][];
+        BitSet linked = new BitSet(graph.numNodes);
+        for (int p = 0; p < numWorkers; p++) {
+            linked.clear();
+            for (int k = graph.offsets[bounds[p]]; k < graph.offsets[bounds[p + 1]]; k++) {
+                linked.set(graph.targets[k]);
+            }
+            for (int q = 0; q < numWorkers; q++) {
+                int first = bounds[q];
+                boundary[p][q] = p == q ? new int[0]
+                        : linked.get(first, bounds[q + 1]).stream().map(i -> i + first).toArray();
+            }
+        }
+        return boundary;
+    }
+
+    /**
+     * Starts the workers, iterates from all probability in node 0 until
+     * the L1 change is at most epsilon, and returns the vector.
+     */
+    public double[] run(double epsilon, int maxIterations) throws IOException {
+        int[] bounds = split();
+        int[][][] boundary = boundaries(bounds);
+        Process[] workers = new Process[numWorkers];
+        DataInputStream[] in = new DataInputStream[numWorkers];
+        DataOutputStream[] out = new DataOutputStream[numWorkers];
+        Socket[] sockets = new Socket[numWorkers];
+        long[] bytes = new long[1];
+        try (ServerSocket server = new ServerSocket(0, numWorkers, InetAddress.getLoopbackAddress())) {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            for (int p = 0; p < numWorkers; p++) {
+                workers[p] = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        DistributedPageRank.class.getName(), Integer.toString(server.getLocalPort()), Integer.toString(p))
+                        .inheritIO().start();
+            }
+            for (int w = 0; w < numWorkers; w++) {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                DataInputStream input = new DataInputStream(new BufferedInputStream(new CountedInput(socket.getInputStream(), bytes), 1 << 16));
+                int p = input.readInt();
+                sockets[p] = socket;
+                in[p] = input;
+                out[p] = new DataOutputStream(new BufferedOutputStream(new CountedOutput(socket.getOutputStream(), bytes), 1 << 16));
+            }
+
+            for (int p = 0; p < numWorkers; p++) {
+                setUp(out[p], p, bounds, boundary);
+            }
+            setupBytes = bytes[0];
+
+            long startNanos = System.nanoTime();
+            double[][][] messages = new double[numWorkers][numWorkers][];
+            double diff = 99;
+            int counter = 0;
+            boolean more = true;
+            while (more) {
+                double dangling = 0;
+                for (int p = 0; p < numWorkers; p++) {
+                    dangling += in[p].readDouble();
+                    for (int q = 0; q < numWorkers; q++) {
+                        messages[p][q] = readDoubles(in[p], boundary[p][q].length);
+                    }
+                }
+                // bored surfers jump from linked docs, all surfers jump from dead ends
+                double jump = (bored * (1 - dangling) + dangling) / graph.numNodes;
+                for (int q = 0; q < numWorkers; q++) {
+                    out[q].writeDouble(jump);
+                    for (int p = 0; p < numWorkers; p++) {
+                        writeDoubles(out[q], messages[p][q]);
+                    }
+                    out[q].flush();
+                }
+                diff = 0;
+                for (int p = 0; p < numWorkers; p++) {
+                    diff += in[p].readDouble();
+                }
+                counter++;
+                System.out.printf("Iteration: %d Diff: %.3e Time: %.1f ms%n", counter, diff, (System.nanoTime() - startNanos) / 1e6);
+                more = diff > epsilon && maxIterations > counter;
+                for (int q = 0; q < numWorkers; q++) {
+                    out[q].writeBoolean(more);
+                    out[q].flush();
+                }
+            }
+            iterationMs = (System.nanoTime() - startNanos) / 1e6;
+            iterationBytes = bytes[0] - setupBytes;
+            iterations = counter;
+
+            double[] a = new double[graph.numNodes];
+            for (int p = 0; p < numWorkers; p++) {
+                for (int i = bounds[p]; i < bounds[p + 1]; i++) {
+                    a[i] = in[p].readDouble();
+                }
+            }
+            System.out.println("Iterations: " + counter);
+            System.out.println("Diff: " + diff);
+            return a;
+        } finally {
+            for (int p = 0; p < numWorkers; p++) {
+                if (sockets[p] != null) {
+                    sockets[p].close();
+                }
+                if (workers[p] != null) {
+                    try {
+                        if (!workers[p].waitFor(10, java.util.concurrent.TimeUnit.SECONDS)) {
+                            workers[p].destroy();
+                        }
+                    } catch (InterruptedException e) {
+                        workers[p].destroy();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends worker p its range, the links of its nodes and its boundaries
+     * with every other worker.
+     */
+    private void setUp(DataOutputStream out, int p, int[] bounds, int[][][] boundary) throws IOException {
+        out.writeInt(graph.numNodes);
+        out.writeInt(numWorkers);
+        out.writeDouble(bored);
+        out.writeInt(bounds[p]);
+        out.writeInt(bounds[p + 1]);
+        for (int i = bounds[p]; i < bounds[p + 1]; i++) {
+            out.writeInt(graph.offsets[i + 1] - graph.offsets[i]);
+            for (int k = graph.offsets[i]; k < graph.offsets[i + 1]; k++) {
+                out.writeInt(graph.targets[k]);
+            }
+        }
+        for (int q = 0; q < numWorkers; q++) {
+            writeInts(out, boundary[p][q]);
+            writeInts(out, boundary[q][p]);
+        }
+        out.flush();
+    }
+
+    /* --------------------------------------------- */
+
+    /**
+     * Runs a worker: connects to the coordinator on the given port, and
+     * iterates its range of nodes until told to stop.
+     */
+    public static void main(String[] args) {
+        int port = Integer.parseInt(args[0]);
+        int me = Integer.parseInt(args[1]);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            out.writeInt(me);
+            out.flush();
+            work(me, in, out);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static void work(int me, DataInputStream in, DataOutputStream out) throws IOException {
+        in.readInt(); // the number of nodes, only needed by the coordinator
+        int numWorkers = in.readInt();
+        double bored = in.readDouble();
+        int lo = in.readInt(), hi = in.readInt();
+        int local = hi - lo;
+        int[] offsets = new int[local + 1];
+        int[] targets = new int[16];
+        for (int i = 0; i < local; i++) {
+            int degree = in.readInt();
+            offsets[i + 1] = offsets[i] + degree;
+            if (targets.length < offsets[i + 1]) {
+                targets = Arrays.copyOf(targets, Math.max(2 * targets.length, offsets[i + 1]));
+            }
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                targets[k] = in.readInt();
+            }
+        }
+        int[][] send = new int[numWorkers][];
+        int[][] receive = new int[numWorkers][];
+        // the values sent to worker q are at next[start[q]] ..
+        int[] start = new int[numWorkers + 1];
+        start[0] = local;
+        for (int q = 0; q < numWorkers; q++) {
+            send[q] = readInts(in);
+            receive[q] = readInts(in);
+            start[q + 1] = start[q] + send[q].length;
+        }
+
+        // every target becomes a slot in next: its own node, or its place in a boundary
+        for (int k = 0; k < offsets[local]; k++) {
+            int target = targets[k];
+            if (target >= lo && target < hi) {
+                targets[k] = target - lo;
+            } else {
+                for (int q = 0; q < numWorkers; q++) {
+                    int slot = Arrays.binarySearch(send[q], target);
+                    if (slot >= 0) {
+                        targets[k] = start[q] + slot;
+                        break;
+                    }
+                }
+            }
+        }
+
+        double[] x = new double[local];
+        double[] next = new double[start[numWorkers]];
+        if (lo == 0 && local > 0) {
+            x[0] = 1; // initial prob
+        }
+        boolean more = true;
+        while (more) {
+            Arrays.fill(next, 0.0);
+            double dangling = 0;
+            for (int i = 0; i < local; i++) {
+                int begin = offsets[i], end = offsets[i + 1];
+                if (begin == end) {
+                    dangling += x[i];
+                    continue;
+                }
+                double share = (1 - bored) * x[i] / (end - begin);
+                for (int k = begin; k < end; k++) {
+                    next[targets[k]] += share;
+                }
+            }
+            out.writeDouble(dangling);
+            for (int q = 0; q < numWorkers; q++) {
+                for (int k = start[q]; k < start[q + 1]; k++) {
+                    out.writeDouble(next[k]);
+                }
+            }
+            out.flush();
+
+            double jump = in.readDouble();
+            for (int p = 0; p < numWorkers; p++) {
+                for (int node : receive[p]) {
+                    next[node - lo] += in.readDouble();
+                }
+            }
+            double diff = 0;
+            for (int i = 0; i < local; i++) {
+                next[i] += jump;
+                diff += Math.abs(next[i] - x[i]);
+                x[i] = next[i];
+            }
+            out.writeDouble(diff);
+            out.flush();
+            more = in.readBoolean();
+        }
+        for (int i = 0; i < local; i++) {
+            out.writeDouble(x[i]);
+        }
+        out.flush();
+    }
+
+    /* --------------------------------------------- */
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int v : values) {
+            out.writeInt(v);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int k = 0; k < values.length; k++) {
+            values[k] = in.readInt();
+        }
+        return values;
+    }
+
+    private static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+        for (double v : values) {
+            out.writeDouble(v);
+        }
+    }
+
+    private static double[] readDoubles(DataInputStream in, int length) throws IOException {
+        double[] values = new double[length];
+        for (int k = 0; k < length; k++) {
+            values[k] = in.readDouble();
+        }
+        return values;
+    }
+
+    /**
+     * Adds up the bytes the coordinator reads.
+     */
+    private static class CountedInput extends FilterInputStream {
+        final long[] bytes;
+
+        CountedInput(InputStream in, long[] bytes) {
+            super(in);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytes[0]++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                bytes[0] += n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Adds up the bytes the coordinator writes.
+     */
+    private static class CountedOutput extends FilterOutputStream {
+        final long[] bytes;
+
+        CountedOutput(OutputStream out, long[] bytes) {
+            super(out);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytes[0]++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytes[0] += len;
+        }
+    }
+}
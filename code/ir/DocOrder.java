@@ -0,0 +1,16 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */  
+
+package ir;
+
+/**
+ *  The orders in which docIDs can be assigned after indexing. Similar
+ *  documents close in the order give small docID gaps in the postings.
+ */
+public enum DocOrder {
+    INDEXING, PAGERANK, PATH
+}
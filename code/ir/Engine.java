@@ -9,6 +9,8 @@ package ir;
 
 import java.util.ArrayList;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 
 /**
  * This is the main class for the search engine.
@@ -57,6 +59,36 @@ public class Engine {
     /** For persistent indexes, we might not need to do any indexing. */
     boolean is_indexing = true;
 
+    /** Weights of PageRank and tf-idf when ranking by combination. */
+    double pageRankWeight = 1000;
+    double tfidfWeight = 1;
+
+    /** Blend topic-sensitive PageRanks by the query instead of the global one. */
+    boolean topicSensitive = false;
+
+    /** Time a HITS query may spend iterating, in milliseconds. */
+    long hitsBudget = 50;
+
+    /** Join the global hubs and authorities to the docIDs at start-up. */
+    boolean globalHITS = false;
+
+    /** Let long ranked queries drop their low-idf terms. */
+    boolean pruning = false;
+
+    /** Answer ranked queries from champion lists first. */
+    boolean championLists = false;
+
+    /** Results the champion tier must give, and its share of the bound (see Searcher.setChampions). */
+    int championK = 10;
+    double championThreshold = 1;
+
+    /** BM25 tf saturation and length normalization. */
+    double bm25K1 = BM25.K1;
+    double bm25B = BM25.B;
+
+    /** The order of the docIDs, set after indexing. */
+    DocOrder docOrder = DocOrder.INDEXING;
+
     /* ----------------------------------------------- */
 
     /**
@@ -67,6 +99,12 @@ public class Engine {
         decodeArgs(args);
         indexer = new Indexer(index, kgIndex, patterns_file);
         searcher = new Searcher(index, kgIndex);
+        searcher.setCombinationWeights(pageRankWeight, tfidfWeight);
+        searcher.setTopicSensitive(topicSensitive);
+        searcher.setHITSBudget(hitsBudget);
+        searcher.setBM25(bm25K1, bm25B);
+        searcher.setPruning(pruning);
+        searcher.setChampions(championK, championThreshold);
         gui = new SearchGUI(this);
         gui.init();
         /*
@@ -86,7 +124,23 @@ public class Engine {
                 long elapsedTime = System.currentTimeMillis() - startTime;
                 gui.displayInfoText(String.format("Indexing done in %.1f seconds.", elapsedTime / 1000.0));
 
-                
+                if (docOrder != DocOrder.INDEXING) {
+                    float[] pagerank = null;
+                    if (docOrder == DocOrder.PAGERANK) {
+                        if (!searcher.getPageRank().isLoaded()) {
+                            searcher.getPageRank().readPageRank();
+                        }
+                        pagerank = searcher.getPageRank().docScores(Index.docNames);
+                    }
+                    indexer.reassignDocIDs(docOrder, pagerank);
+                }
+                if (index instanceof PersistentHashedIndex) {
+                    try {
+                        indexer.forwardIndex.write(PersistentHashedIndex.INDEXDIR + "/" + ForwardIndex.FNAME);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
                 // indexer.calcEucLengths();
                 index.cleanup();
                 // searcher.getPageRank().compute();
@@ -103,8 +157,40 @@ public class Engine {
         } else {
             // searcher
             searcher.getPageRank().readPageRank();
+            try {
+                indexer.forwardIndex = ForwardIndex.open(PersistentHashedIndex.INDEXDIR + "/" + ForwardIndex.FNAME);
+            } catch (FileNotFoundException e) {
+                System.err.println("No forward index, relevance feedback reads the documents");
+                indexer.forwardIndex = null;
+            } catch (IOException e) {
+                e.printStackTrace();
+                indexer.forwardIndex = null;
+            }
             gui.displayInfoText("Index is loaded from disk");
         }
+        // Resolve the PageRank of each docID once, instead of per posting
+        if (!searcher.getPageRank().isLoaded()) {
+            searcher.getPageRank().readPageRank();
+        }
+        searcher.joinPageRank();
+        searcher.joinDocLengths();
+        searcher.setForwardIndex(indexer.forwardIndex);
+        if (globalHITS) {
+            searcher.joinHITS();
+        }
+        if (championLists) {
+            if (is_indexing) {
+                searcher.buildChampionLists(index.getLoadedIndex().keySet());
+            } else {
+                searcher.readChampionLists();
+            }
+        }
+        if (topicSensitive) {
+            searcher.getPageRank().readTopics();
+            if (searcher.getPageRank().numTopics() == 0) {
+                searcher.getPageRank().computeTopics();
+            }
+        }
     }
 
     /* ----------------------------------------------- */
@@ -135,6 +221,58 @@ public class Engine {
                 if (i < args.length) {
                     rank_file = args[i++];
                 }
+            } else if ("-prw".equals(args[i])) {
+                i++;
+                if (i < args.length) {
+                    pageRankWeight = Double.parseDouble(args[i++]);
+                }
+            } else if ("-tfw".equals(args[i])) {
+                i++;
+                if (i < args.length) {
+                    tfidfWeight = Double.parseDouble(args[i++]);
+                }
+            } else if ("-hb".equals(args[i])) {
+                i++;
+                if (i < args.length) {
+                    hitsBudget = Long.parseLong(args[i++]);
+                }
+            } else if ("-k1".equals(args[i])) {
+                i++;
+                if (i < args.length) {
+                    bm25K1 = Double.parseDouble(args[i++]);
+                }
+            } else if ("-b".equals(args[i])) {
+                i++;
+                if (i < args.length) {
+                    bm25B = Double.parseDouble(args[i++]);
+                }
+            } else if ("-prune".equals(args[i])) {
+                i++;
+                pruning = true;
+            } else if ("-ch".equals(args[i])) {
+                i++;
+                championLists = true;
+            } else if ("-chk".equals(args[i])) {
+                i++;
+                if (i < args.length) {
+                    championK = Integer.parseInt(args[i++]);
+                }
+            } else if ("-cht".equals(args[i])) {
+                i++;
+                if (i < args.length) {
+                    championThreshold = Double.parseDouble(args[i++]);
+                }
+            } else if ("-gh".equals(args[i])) {
+                i++;
+                globalHITS = true;
+            } else if ("-tsp".equals(args[i])) {
+                i++;
+                topicSensitive = true;
+            } else if ("-order".equals(args[i])) {
+                i++;
+                if (i < args.length) {
+                    docOrder = DocOrder.valueOf(args[i++].toUpperCase());
+                }
             } else if ("-ni".equals(args[i])) {
                 i++;
                 is_indexing = false;
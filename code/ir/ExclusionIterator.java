@@ -0,0 +1,62 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+/**
+ * Matches the documents of one iterator that another iterator does not
+ * match. The excluded iterator is only advanced to the candidates of the
+ * included one, so no complement set is ever built.
+ */
+public class ExclusionIterator extends PostingsIterator {
+
+    private final PostingsIterator include;
+
+    private final PostingsIterator exclude;
+
+    public ExclusionIterator(PostingsIterator include, PostingsIterator exclude) {
+        this.include = include;
+        this.exclude = exclude;
+    }
+
+    public int docID() {
+        return include.docID();
+    }
+
+    public int nextDoc() {
+        return doNext(include.nextDoc());
+    }
+
+    public int advance(int target) {
+        return doNext(include.advance(target));
+    }
+
+    private int doNext(int doc) {
+        while (doc != NO_MORE_DOCS) {
+            if (exclude.docID() < doc) {
+                exclude.advance(doc);
+            }
+            if (exclude.docID() != doc) {
+                return doc;
+            }
+            doc = include.nextDoc();
+        }
+        return NO_MORE_DOCS;
+    }
+
+    public int freq() {
+        return include.freq();
+    }
+
+    public int nextPosition() {
+        return include.nextPosition();
+    }
+
+    public long cost() {
+        return include.cost();
+    }
+}
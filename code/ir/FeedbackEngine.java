@@ -0,0 +1,211 @@
+/*
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ *
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.util.Arrays;
+
+/**
+ * Rocchio relevance feedback over the forward index. The new query is
+ *
+ *   alpha * q  +  beta / |R| * (sum over relevant d of d)
+ *
+ * where d weighs each of its terms by tf * idf / len_d. The weights are
+ * summed in a term ID to weight hash map, and only the original terms
+ * and the m heaviest new terms are kept, so that the expanded query stays
+ * cheap to rank.
+ */
+public class FeedbackEngine {
+
+    /** Number of expansion terms kept by default. */
+    public static final int M = 30;
+
+    final ForwardIndex forward;
+
+    /** The document frequency of each term ID of forward. */
+    final int[] df;
+
+    /** Number of expansion terms kept. */
+    final int m;
+
+    public FeedbackEngine(ForwardIndex forward, int m) {
+        this(forward, forward.documentFrequencies(), m);
+    }
+
+    /**
+     * Uses df instead of counting the documents of forward, which may
+     * hold only some of the documents.
+     */
+    public FeedbackEngine(ForwardIndex forward, int[] df, int m) {
+        this.forward = forward;
+        this.df = df;
+        this.m = m;
+    }
+
+    /**
+     * Expands query in place with the given relevant documents.
+     */
+    public void expand(Query query, int[] relevant, double alpha, double beta) {
+        TermWeights weights = new TermWeights(64);
+        double N = Math.max(Index.docNames.size(), 1);
+        int[] termIDs = new int[16];
+        int[] freqs = new int[16];
+        for (int docID : relevant) {
+            int size = forward.size(docID);
+            if (termIDs.length < size) {
+                termIDs = new int[2 * size];
+                freqs = new int[termIDs.length];
+            }
+            int n = forward.vector(docID, termIDs, freqs);
+            Integer length = Index.docLengths.get(docID);
+            double share = beta / relevant.length / (length == null || length == 0 ? 1 : length);
+            for (int k = 0; k < n; k++) {
+                int t = termIDs[k];
+                weights.add(t, share * freqs[k] * Math.log(N / Math.max(df[t], 1)));
+            }
+        }
+
+        // the original terms stay, with their part of the feedback
+        for (Query.QueryTerm qt : query.queryterm) {
+            int t = forward.termID(qt.term);
+            qt.weight = alpha + (t >= 0 ? weights.remove(t) : 0);
+        }
+
+        // a min-heap of the m heaviest remaining terms
+        double[] keys = new double[m];
+        int[] heap = new int[m];
+        int size = 0;
+        for (int i = 0; i < weights.keys.length; i++) {
+            if (weights.keys[i] == TermWeights.FREE || weights.values[i] <= 0) {
+                continue;
+            }
+            if (size < m) {
+                keys[size] = weights.values[i];
+                heap[size] = weights.keys[i];
+                siftUp(keys, heap, size++);
+            } else if (m > 0 && weights.values[i] > keys[0]) {
+                keys[0] = weights.values[i];
+                heap[0] = weights.keys[i];
+                siftDown(keys, heap, size);
+            }
+        }
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> Double.compare(keys[y], keys[x]));
+        for (int i : order) {
+            query.queryterm.add(query.new QueryTerm(forward.term(heap[i]), keys[i]));
+        }
+    }
+
+    private static void siftUp(double[] keys, int[] values, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (keys[i] >= keys[parent]) {
+                break;
+            }
+            swap(keys, values, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(double[] keys, int[] values, int size) {
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                child++;
+            }
+            if (keys[child] >= keys[i]) {
+                break;
+            }
+            swap(keys, values, i, child);
+            i = child;
+        }
+    }
+
+    private static void swap(double[] keys, int[] values, int i, int j) {
+        double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        int value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    /**
+     * An open addressing map from term IDs to summed weights, with linear
+     * probing. It only grows, so a removed term keeps its slot with weight 0.
+     */
+    static class TermWeights {
+        static final int FREE = -1;
+
+        int[] keys;
+        double[] values;
+        int size = 0;
+
+        /** 32 minus the log of the capacity, for Fibonacci hashing. */
+        int shift;
+
+        TermWeights(int capacity) {
+            keys = new int[Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1];
+            values = new double[keys.length];
+            shift = Integer.numberOfLeadingZeros(keys.length) + 1;
+            Arrays.fill(keys, FREE);
+        }
+
+        private int slot(int key) {
+            int mask = keys.length - 1;
+            int i = (key * 0x9E3779B9) >>> shift;
+            while (keys[i] != FREE && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        void add(int key, double value) {
+            int i = slot(key);
+            if (keys[i] == FREE) {
+                if (2 * (size + 1) > keys.length) {
+                    grow();
+                    i = slot(key);
+                }
+                keys[i] = key;
+                size++;
+            }
+            values[i] += value;
+        }
+
+        /** Returns the weight of a key and sets it to 0. */
+        double remove(int key) {
+            int i = slot(key);
+            if (keys[i] == FREE) {
+                return 0;
+            }
+            double value = values[i];
+            values[i] = 0;
+            return value;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            double[] oldValues = values;
+            keys = new int[2 * oldKeys.length];
+            values = new double[keys.length];
+            shift--;
+            Arrays.fill(keys, FREE);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != FREE) {
+                    int j = slot(oldKeys[i]);
+                    keys[j] = oldKeys[i];
+                    values[j] = oldValues[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * The term vector of every document: its distinct terms, as term IDs in
+ * increasing order, and their frequencies. Built while indexing, so that
+ * relevance feedback does not tokenize the documents again. It is memory
+ * mapped when read from disk.
+ *
+ * Layout (big-endian):
+ *   header   int MAGIC, int VERSION, int numDocs, int numTerms,
+ *            long docsPtr, long dataPtr, long termsPtr
+ *   docs     numDocs x (int start in data, int number of terms)
+ *   data     for each term of a document: varint term ID gap, varint tf
+ *   terms    numTerms terms in term ID order (DataOutput.writeUTF)
+ */
+public class ForwardIndex {
+
+    static final int MAGIC = 0x46575244; // "FWRD"
+
+    static final int VERSION = 1;
+
+    /** The forward index file name, in PersistentHashedIndex.INDEXDIR. */
+    public static final String FNAME = "forward";
+
+    private static final int HEADER_SIZE = 4 * Integer.BYTES + 3 * Long.BYTES;
+
+    /** The term of each term ID, and the other way round. */
+    private final ArrayList<String> terms = new ArrayList<String>();
+    private final HashMap<String, Integer> termIDs = new HashMap<String, Integer>();
+
+    /** Where the vector of each docID starts in data, and its number of terms. */
+    private int[] start = new int[1 << 10];
+    private int[] count = new int[1 << 10];
+    private int numDocs = 0;
+
+    /** The vectors added while indexing, until they are read. */
+    private ByteArrayOutputStream added = new ByteArrayOutputStream();
+
+    /** The encoded vectors, wrapped or mapped. */
+    private ByteBuffer data;
+
+    /** The number of documents holding each term, counted when first asked for. */
+    private int[] df;
+
+    /**
+     * Adds the vector of a document from the frequency of each of its
+     * terms. Documents are added once, in any order.
+     */
+    public void add(int docID, Map<String, Integer> frequencies) {
+        long[] postings = new long[frequencies.size()];
+        int k = 0;
+        for (Map.Entry<String, Integer> e : frequencies.entrySet()) {
+            Integer id = termIDs.get(e.getKey());
+            if (id == null) {
+                id = terms.size();
+                terms.add(e.getKey());
+                termIDs.put(e.getKey(), id);
+            }
+            postings[k++] = ((long) id << 32) | e.getValue();
+        }
+        Arrays.sort(postings);
+        if (docID >= start.length) {
+            start = Arrays.copyOf(start, Math.max(2 * start.length, docID + 1));
+            count = Arrays.copyOf(count, start.length);
+        }
+        numDocs = Math.max(numDocs, docID + 1);
+        start[docID] = added.size();
+        count[docID] = postings.length;
+        int last = 0;
+        for (long p : postings) {
+            VariableByte.write(added, (int) (p >>> 32) - last);
+            VariableByte.write(added, (int) p);
+            last = (int) (p >>> 32);
+        }
+        data = null;
+        df = null;
+    }
+
+    /** Adds the vector of a document from its tokens. */
+    public void add(int docID, List<String> tokens) {
+        HashMap<String, Integer> frequencies = new HashMap<String, Integer>();
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        add(docID, frequencies);
+    }
+
+    /** Returns the number of distinct terms of a document. */
+    public int size(int docID) {
+        return docID < numDocs ? count[docID] : 0;
+    }
+
+    /**
+     * Decodes the vector of a document into termIDs and freqs, which must
+     * hold size(docID) entries, and returns its number of terms.
+     */
+    public int vector(int docID, int[] termIDs, int[] freqs) {
+        if (docID >= numDocs) {
+            return 0;
+        }
+        if (data == null) {
+            data = ByteBuffer.wrap(added.toByteArray());
+        }
+        ByteBuffer in = data.duplicate().position(start[docID]);
+        int id = 0;
+        for (int k = 0; k < count[docID]; k++) {
+            id += VariableByte.read(in);
+            termIDs[k] = id;
+            freqs[k] = VariableByte.read(in);
+        }
+        return count[docID];
+    }
+
+    public String term(int termID) {
+        return terms.get(termID);
+    }
+
+    /** Returns the ID of a term, or -1 if no document holds it. */
+    public int termID(String term) {
+        Integer id = termIDs.get(term);
+        return id == null ? -1 : id;
+    }
+
+    public int numTerms() {
+        return terms.size();
+    }
+
+    /** Returns the document frequency of every term ID, from one pass over the vectors. */
+    public int[] documentFrequencies() {
+        if (df == null) {
+            int[] counts = new int[terms.size()];
+            int[] termIDs = new int[16];
+            int[] freqs = new int[16];
+            for (int d = 0; d < numDocs; d++) {
+                if (termIDs.length < count[d]) {
+                    termIDs = new int[2 * count[d]];
+                    freqs = new int[termIDs.length];
+                }
+                int n = vector(d, termIDs, freqs);
+                for (int k = 0; k < n; k++) {
+                    counts[termIDs[k]]++;
+                }
+            }
+            df = counts;
+        }
+        return df;
+    }
+
+    /**
+     * Moves the vector of docID d to newID[d], when the docIDs are
+     * reassigned. The vectors themselves stay where they are.
+     */
+    public void renumber(int[] newID) {
+        int[] movedStart = new int[start.length];
+        int[] movedCount = new int[count.length];
+        for (int d = 0; d < Math.min(numDocs, newID.length); d++) {
+            movedStart[newID[d]] = start[d];
+            movedCount[newID[d]] = count[d];
+        }
+        start = movedStart;
+        count = movedCount;
+    }
+
+    public void write(String filename) throws IOException {
+        ByteArrayOutputStream termBytes = new ByteArrayOutputStream();
+        DataOutputStream termOut = new DataOutputStream(termBytes);
+        for (String term : terms) {
+            termOut.writeUTF(term);
+        }
+        long docsPtr = HEADER_SIZE;
+        long dataPtr = docsPtr + 2L * numDocs * Integer.BYTES;
+        long termsPtr = dataPtr + added.size();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(numDocs);
+            out.writeInt(terms.size());
+            out.writeLong(docsPtr);
+            out.writeLong(dataPtr);
+            out.writeLong(termsPtr);
+            for (int d = 0; d < numDocs; d++) {
+                out.writeInt(start[d]);
+                out.writeInt(count[d]);
+            }
+            added.writeTo(out);
+            termBytes.writeTo(out);
+        }
+    }
+
+    /**
+     * Memory maps a forward index file. The docs table and the terms are
+     * read into the heap, the vectors stay in the mapped file. Documents
+     * are not added to an opened index.
+     */
+    public static ForwardIndex open(String filename) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a forward index file");
+        }
+        ForwardIndex forward = new ForwardIndex();
+        forward.numDocs = buffer.getInt(8);
+        int numTerms = buffer.getInt(12);
+        int docsPtr = (int) buffer.getLong(16);
+        int dataPtr = (int) buffer.getLong(24);
+        int termsPtr = (int) buffer.getLong(32);
+        forward.start = new int[forward.numDocs];
+        forward.count = new int[forward.numDocs];
+        for (int d = 0; d < forward.numDocs; d++) {
+            forward.start[d] = buffer.getInt(docsPtr + 2 * d * Integer.BYTES);
+            forward.count[d] = buffer.getInt(docsPtr + (2 * d + 1) * Integer.BYTES);
+        }
+        forward.data = buffer.duplicate().position(dataPtr).limit(termsPtr).slice();
+        byte[] termBytes = new byte[buffer.capacity() - termsPtr];
+        buffer.get(termsPtr, termBytes);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(termBytes));
+        for (int t = 0; t < numTerms; t++) {
+            String term = in.readUTF();
+            forward.termIDs.put(term, t);
+            forward.terms.add(term);
+        }
+        return forward;
+    }
+}
@@ -0,0 +1,32 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+/**
+ * A directed graph on the nodes 0 .. numNodes()-1, whose successor lists
+ * are sorted and without duplicates.
+ */
+public interface Graph {
+
+    public int numNodes();
+
+    public int numEdges();
+
+    public int outDegree( int node );
+
+    /**
+     * Writes the successors of a node into buffer, which must hold at least
+     * outDegree(node) ints.
+     *
+     * @return the number of successors.
+     */
+    public int successors( int node, int[] buffer );
+
+    /** Returns the graph with every link reversed. */
+    public Graph transpose();
+}
@@ -0,0 +1,79 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Changes to a link graph, by node name. A delta file has one change per
+ * line:
+ *   +nodeID;outNodeID1,outNodeID2,...   adds links (and new nodes)
+ *   -nodeID;outNodeID1,outNodeID2,...   removes links
+ *   -nodeID                             removes a node and its outlinks
+ */
+public class GraphDelta {
+
+    /** Links to add, as (from, to) name pairs. */
+    final ArrayList<String[]> added = new ArrayList<String[]>();
+
+    /** Links to remove, as (from, to) name pairs. */
+    final ArrayList<String[]> removed = new ArrayList<String[]>();
+
+    /** Nodes to remove. */
+    final ArrayList<String> removedNodes = new ArrayList<String>();
+
+    public void addLink(String from, String to) {
+        added.add(new String[] { from, to });
+    }
+
+    public void removeLink(String from, String to) {
+        removed.add(new String[] { from, to });
+    }
+
+    public void removeNode(String node) {
+        removedNodes.add(node);
+    }
+
+    public int size() {
+        return added.size() + removed.size() + removedNodes.size();
+    }
+
+    public static GraphDelta read(String filename) throws IOException {
+        GraphDelta delta = new GraphDelta();
+        try (BufferedReader in = new BufferedReader(new FileReader(filename))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.length() < 2) {
+                    continue;
+                }
+                boolean add = line.charAt(0) == '+';
+                int index = line.indexOf(';');
+                if (index < 0) {
+                    if (!add) {
+                        delta.removeNode(line.substring(1));
+                    }
+                    continue;
+                }
+                String from = line.substring(1, index);
+                for (String to : line.substring(index + 1).split(",")) {
+                    if (to.isEmpty()) {
+                        continue;
+                    }
+                    if (add) {
+                        delta.addLink(from, to);
+                    } else {
+                        delta.removeLink(from, to);
+                    }
+                }
+            }
+        }
+        return delta;
+    }
+}
@@ -8,7 +8,10 @@
 package ir;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.IntStream;
 import java.io.*;
+import java.nio.file.*;
 
 
 public class HITSRanker {
@@ -24,6 +27,23 @@ public class HITSRanker {
      */
     final static double EPSILON = 0.001;
 
+    /**
+     *   At most this many pages linking to a root page are added to the
+     *   base set, as in Kleinberg's algorithm
+     */
+    final static int MAX_IN_LINKS = 50;
+
+    /**
+     *   Number of root sets whose base sets and scores are cached
+     */
+    final static int CACHE_SIZE = 64;
+
+    /**
+     *   Number of nodes handed to a thread at a time; base sets smaller
+     *   than two blocks are iterated by the calling thread
+     */
+    final static int BLOCK_SIZE = 1024;
+
     /**
      *   The inverted index
      */
@@ -35,14 +55,105 @@ public class HITSRanker {
     HashMap<String,Integer> titleToId = new HashMap<String,Integer>();
 
     /**
-     *   Sparse vector containing hub scores
+     *   Mapping between the nodeIDs of the links file and node numbers
+     */
+    TitleMap nodes = new TitleMap();
+
+    /**
+     *   The links (for authorities) and the reversed links (for hubs)
+     */
+    Graph graph;
+    Graph inGraph;
+
+    /**
+     *   Whether the graphs are kept gap compressed in memory
+     */
+    boolean compressGraph = false;
+
+    /**
+     *   Number of threads of the iteration, and their pool (made on first use)
+     */
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    private ForkJoinPool pool;
+
+    /**
+     *   The global hub and authority scores, memory mapped from outputFilename
      */
-    HashMap<Integer,Double> hubs;
+    String outputFilename = "./index/hits";
+    StaticScoreFile scores;
+
+    /**
+     *   Hub and authority scores of the nodes of the last base set
+     */
+    double[] hubs;
+    double[] authorities;
+
+    /**
+     *   The node of each docID and the docID of each node (-1 if none),
+     *   built on first use from the docNames of the index
+     */
+    int[] docNode;
+    int[] nodeDoc;
+
+    /**
+     *   The base sets already ranked, by their sorted root nodes
+     */
+    LinkedHashMap<RootSet,BaseSet> cache = new LinkedHashMap<RootSet,BaseSet>( 16, 0.75f, true ) {
+        protected boolean removeEldestEntry( Map.Entry<RootSet,BaseSet> eldest ) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     *   Marks the nodes of the base set being built: node i is in the
+     *   set if mark[i] == stamp, and then has number local[i] in it
+     */
+    private int[] mark;
+    private int[] local;
+    private int stamp = 0;
+
+    /**
+     *   The nodes of a root set, sorted, as a hash key
+     */
+    static final class RootSet {
+        final int[] nodes;
+        final int hash;
+
+        RootSet( int[] nodes ) {
+            this.nodes = nodes;
+            this.hash = Arrays.hashCode( nodes );
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals( Object o ) {
+            return o instanceof RootSet && Arrays.equals( nodes, ((RootSet) o).nodes );
+        }
+    }
 
     /**
-     *   Sparse vector containing authority scores
+     *   A base set: its nodes, the links between them in CSR form, and
+     *   the converged hub and authority scores of each node
      */
-    HashMap<Integer,Double> authorities;
+    static final class BaseSet {
+        final int[] nodes;
+        final int[] outOffsets, outTargets;
+        final int[] inOffsets, inTargets;
+        double[] hubs;
+        double[] authorities;
+        /** False if the iteration was stopped by the time budget */
+        boolean converged = false;
+
+        BaseSet( int[] nodes, int[] outOffsets, int[] outTargets, int[] inOffsets, int[] inTargets ) {
+            this.nodes = nodes;
+            this.outOffsets = outOffsets;
+            this.outTargets = outTargets;
+            this.inOffsets = inOffsets;
+            this.inTargets = inTargets;
+        }
+    }
 
     
     /* --------------------------------------------- */
@@ -102,88 +213,400 @@ public class HITSRanker {
      * @param      titlesFilename  File containing the mapping between nodeIDs and pages titles
      */
     void readDocs( String linksFilename, String titlesFilename ) {
-        //
-        // YOUR CODE HERE
-        //
+        try {
+            LinkGraph links = LinkGraph.read( linksFilename, nodes );
+            LinkGraph reversed = links.transpose();
+            if ( compressGraph ) {
+                graph = CompressedGraph.compress( links );
+                inGraph = CompressedGraph.compress( reversed );
+            } else {
+                graph = links;
+                inGraph = reversed;
+            }
+        } catch ( IOException e ) {
+            System.err.println( "Error reading file " + linksFilename );
+            return;
+        }
+        try ( BufferedReader in = new BufferedReader( new FileReader( titlesFilename ))) {
+            String line;
+            while ( (line = in.readLine()) != null ) {
+                int index = line.indexOf( ";" );
+                int node = nodes.get( line.substring( 0, index ));
+                if ( node >= 0 ) {
+                    titleToId.put( line.substring( index + 1 ), node );
+                }
+            }
+        } catch ( IOException e ) {
+            System.err.println( "Error reading file " + titlesFilename );
+        }
+    }
+
+    /**
+     * Builds the base set of a root set: the root nodes, the nodes they
+     * link to, and at most MAX_IN_LINKS nodes linking to each of them,
+     * with the links among them numbered by their place in the set.
+     *
+     * @param      roots  The nodes of the root set, without duplicates
+     */
+    BaseSet baseSet( int[] roots ) {
+        int n = graph.numNodes();
+        if ( mark == null ) {
+            mark = new int[n];
+            local = new int[n];
+        }
+        if ( ++stamp == 0 ) {
+            Arrays.fill( mark, 0 );
+            stamp = 1;
+        }
+        int[] nodes = new int[Math.max( 16, 2 * roots.length )];
+        int size = 0;
+        for ( int root : roots ) {
+            size = addNode( root, nodes, size );
+            nodes = grow( nodes, size );
+        }
+        int[] buffer = new int[16];
+        for ( int root : roots ) {
+            buffer = buffer( buffer, Math.max( graph.outDegree( root ), inGraph.outDegree( root )));
+            int out = graph.successors( root, buffer );
+            for ( int k = 0; k < out; k++ ) {
+                size = addNode( buffer[k], nodes, size );
+                nodes = grow( nodes, size );
+            }
+            int in = Math.min( inGraph.successors( root, buffer ), MAX_IN_LINKS );
+            for ( int k = 0; k < in; k++ ) {
+                size = addNode( buffer[k], nodes, size );
+                nodes = grow( nodes, size );
+            }
+        }
+        nodes = Arrays.copyOf( nodes, size );
+
+        // the links of the whole graph between nodes of the base set
+        int[] outOffsets = new int[size + 1];
+        int[] outTargets = new int[16];
+        int numLinks = 0;
+        for ( int i = 0; i < size; i++ ) {
+            buffer = buffer( buffer, graph.outDegree( nodes[i] ));
+            int out = graph.successors( nodes[i], buffer );
+            for ( int k = 0; k < out; k++ ) {
+                if ( mark[buffer[k]] == stamp ) {
+                    outTargets = grow( outTargets, numLinks + 1 );
+                    outTargets[numLinks++] = local[buffer[k]];
+                }
+            }
+            outOffsets[i + 1] = numLinks;
+        }
+        int[] inOffsets = new int[size + 1];
+        for ( int k = 0; k < numLinks; k++ ) {
+            inOffsets[outTargets[k] + 1]++;
+        }
+        for ( int i = 0; i < size; i++ ) {
+            inOffsets[i + 1] += inOffsets[i];
+        }
+        int[] inTargets = new int[numLinks];
+        int[] fill = Arrays.copyOf( inOffsets, size );
+        for ( int i = 0; i < size; i++ ) {
+            for ( int k = outOffsets[i]; k < outOffsets[i + 1]; k++ ) {
+                inTargets[fill[outTargets[k]]++] = i;
+            }
+        }
+        return new BaseSet( nodes, outOffsets, Arrays.copyOf( outTargets, numLinks ), inOffsets, inTargets );
     }
 
+    private int addNode( int node, int[] nodes, int size ) {
+        if ( mark[node] != stamp ) {
+            mark[node] = stamp;
+            local[node] = size;
+            nodes[size++] = node;
+        }
+        return size;
+    }
+
+    private static int[] grow( int[] a, int size ) {
+        return size < a.length ? a : Arrays.copyOf( a, 2 * a.length );
+    }
+
+    private static int[] buffer( int[] buffer, int size ) {
+        return size <= buffer.length ? buffer : new int[2 * size];
+    }
+
+
     /**
-     * Perform HITS iterations until convergence
+     * Perform HITS iterations until convergence: the authority of a node
+     * is the sum of the hubs linking to it, the hub of a node the sum of
+     * the authorities it links to, both normalized to length 1.
+     *
+     * The nodes are split into blocks that are updated in parallel. If the
+     * deadline passes first, the scores of the last finished iteration are
+     * kept (at least one is done), and a later call goes on from them.
      *
-     * @param      titles  The titles of the documents in the root set
+     * @param      base      The base set, whose scores are set
+     * @param      deadline  System.nanoTime() at which to stop
+     */
+    void iterate( BaseSet base, long deadline ) {
+        int n = base.nodes.length;
+        double[] h = base.hubs;
+        double[] a = base.authorities;
+        if ( h == null ) {
+            h = new double[n];
+            a = new double[n];
+            Arrays.fill( h, 1 / Math.sqrt( n ));
+            Arrays.fill( a, 1 / Math.sqrt( n ));
+        }
+        double[] hNext = new double[n];
+        double[] aNext = new double[n];
+        int blocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        boolean parallel = parallelism > 1 && blocks > 1;
+        base.converged = false;
+        try {
+            for ( int step = 0; step < MAX_NUMBER_OF_STEPS && (step == 0 || System.nanoTime() < deadline); step++ ) {
+                final double[] hubs = h, auths = a, hubsNext = hNext, authsNext = aNext;
+                double aNorm = Math.sqrt( sum( blocks, parallel, b -> authorityBlock( base, b, hubs, authsNext )));
+                double hNorm = Math.sqrt( sum( blocks, parallel, b -> hubBlock( base, b, authsNext, hubsNext )));
+                double diff = sum( blocks, parallel, b -> scaleBlock( b, n, hubsNext, hubs, hNorm ) + scaleBlock( b, n, authsNext, auths, aNorm ));
+                h = hubsNext; hNext = hubs;
+                a = authsNext; aNext = auths;
+                if ( diff < EPSILON ) {
+                    base.converged = true;
+                    break;
+                }
+            }
+        } catch ( InterruptedException | ExecutionException e ) {
+            e.printStackTrace();
+        }
+        base.hubs = h;
+        base.authorities = a;
+    }
+
+    /**
+     * Adds up f over all blocks, in the pool if parallel.
      */
-    private void iterate(String[] titles) {
-        //
-        // YOUR CODE HERE
-        //
+    private double sum( int blocks, boolean parallel, java.util.function.IntToDoubleFunction f ) throws InterruptedException, ExecutionException {
+        if ( !parallel ) {
+            double sum = 0;
+            for ( int b = 0; b < blocks; b++ ) {
+                sum += f.applyAsDouble( b );
+            }
+            return sum;
+        }
+        if ( pool == null ) {
+            pool = new ForkJoinPool( parallelism );
+        }
+        return pool.submit( () -> IntStream.range( 0, blocks ).parallel().mapToDouble( f ).sum() ).get();
+    }
+
+    /**
+     * Sets the authorities of block b from the hubs linking to them, and
+     * returns the sum of their squares.
+     */
+    private static double authorityBlock( BaseSet base, int b, double[] h, double[] aNext ) {
+        double squares = 0;
+        for ( int i = b * BLOCK_SIZE, end = Math.min( i + BLOCK_SIZE, aNext.length ); i < end; i++ ) {
+            double sum = 0;
+            for ( int k = base.inOffsets[i]; k < base.inOffsets[i + 1]; k++ ) {
+                sum += h[base.inTargets[k]];
+            }
+            aNext[i] = sum;
+            squares += sum * sum;
+        }
+        return squares;
+    }
+
+    /**
+     * Sets the hubs of block b from the authorities they link to, and
+     * returns the sum of their squares.
+     */
+    private static double hubBlock( BaseSet base, int b, double[] a, double[] hNext ) {
+        double squares = 0;
+        for ( int i = b * BLOCK_SIZE, end = Math.min( i + BLOCK_SIZE, hNext.length ); i < end; i++ ) {
+            double sum = 0;
+            for ( int k = base.outOffsets[i]; k < base.outOffsets[i + 1]; k++ ) {
+                sum += a[base.outTargets[k]];
+            }
+            hNext[i] = sum;
+            squares += sum * sum;
+        }
+        return squares;
     }
 
+    /**
+     * Divides block b of next by norm, and returns its L1 distance to the
+     * previous scores.
+     */
+    private static double scaleBlock( int b, int n, double[] next, double[] previous, double norm ) {
+        double diff = 0;
+        for ( int i = b * BLOCK_SIZE, end = Math.min( i + BLOCK_SIZE, n ); i < end; i++ ) {
+            if ( norm > 0 ) {
+                next[i] /= norm;
+            }
+            diff += Math.abs( next[i] - previous[i] );
+        }
+        return diff;
+    }
 
     /**
      * Rank the documents in the subgraph induced by the documents present
-     * in the postings list `post`.
+     * in the postings list `post`. The base set and its scores are cached,
+     * so a repeated query only looks them up.
      *
      * @param      post  The list of postings fulfilling a certain information need
      *
      * @return     A list of postings ranked according to the hub and authority scores.
      */
-    PostingsList rank(PostingsList post) {
-        //
-        // YOUR CODE HERE
-        //
-        return null;
+    PostingsList rank( PostingsList post ) {
+        return rank( post, 0, 1, 1, Long.MAX_VALUE );
     }
 
-
     /**
-     * Sort a hash map by values in the descending order
+     * Ranks the base set of the documents in `post` by a weighted sum of
+     * their score in `post` (tf-idf), hub and authority, each divided by
+     * its largest value. Documents of `post` that are not in the link
+     * graph only get the first part.
      *
-     * @param      map    A hash map to sorted
+     * @param      post             The root set, with the score of each document
+     * @param      budgetNanos      The time the iteration may take; when it
+     *                              runs out, the scores so far are used
      *
-     * @return     A hash map sorted by values
+     * @return     The documents of the base set, sorted by score.
+     */
+    PostingsList rank( PostingsList post, double scoreWeight, double hubWeight, double authorityWeight, long budgetNanos ) {
+        PostingsList result = new PostingsList();
+        if ( graph == null || post == null || post.size() == 0 ) {
+            return result;
+        }
+        long start = System.nanoTime();
+        long deadline = budgetNanos > Long.MAX_VALUE - start ? Long.MAX_VALUE : start + budgetNanos;
+        mapDocs();
+        double maxScore = 0;
+        for ( int i = 0; i < post.size(); i++ ) {
+            maxScore = Math.max( maxScore, post.get( i ).score );
+        }
+        double scale = maxScore > 0 ? scoreWeight / maxScore : 0;
+        int[] order = new int[post.size()];
+        int linked = 0;
+        for ( int i = 0; i < post.size(); i++ ) {
+            PostingsEntry e = post.get( i );
+            if ( e.docID >= 0 && e.docID < docNode.length && docNode[e.docID] >= 0 ) {
+                order[linked++] = i;
+            } else {
+                result.add( e.docID, 0, scale * e.score );
+            }
+        }
+
+        // the root nodes in increasing order, which is also their place in the base set
+        Integer[] byNode = new Integer[linked];
+        for ( int i = 0; i < linked; i++ ) {
+            byNode[i] = order[i];
+        }
+        Arrays.sort( byNode, (x, y) -> Integer.compare( docNode[post.get( x ).docID], docNode[post.get( y ).docID] ));
+        int[] roots = new int[linked];
+        double[] rootScores = new double[linked];
+        int size = 0;
+        for ( int i : byNode ) {
+            int node = docNode[post.get( i ).docID];
+            if ( size == 0 || roots[size - 1] != node ) {
+                roots[size++] = node;
+            }
+            rootScores[size - 1] = Math.max( rootScores[size - 1], post.get( i ).score );
+        }
+        BaseSet base = rank( Arrays.copyOf( roots, size ), deadline );
+
+        // one accumulator over the base set for all parts of the score
+        double[] acc = new double[base.nodes.length];
+        double hubScale = hubWeight / max( base.hubs );
+        double authorityScale = authorityWeight / max( base.authorities );
+        for ( int i = 0; i < acc.length; i++ ) {
+            acc[i] = hubScale * base.hubs[i] + authorityScale * base.authorities[i];
+        }
+        for ( int j = 0; j < size; j++ ) {
+            acc[j] += scale * rootScores[j];
+        }
+        for ( int i = 0; i < acc.length; i++ ) {
+            int doc = nodeDoc[base.nodes[i]];
+            if ( doc >= 0 ) {
+                result.add( doc, 0, acc[i] );
+            }
+        }
+        result.sort();
+        return result;
+    }
+
+    private static double max( double[] v ) {
+        double max = 0;
+        for ( double x : v ) {
+            max = Math.max( max, x );
+        }
+        return max > 0 ? max : 1;
+    }
+
+    /**
+     * Returns the ranked base set of a sorted root set, from the cache if
+     * it has been ranked before. An iteration cut short by the deadline
+     * is continued the next time the root set comes.
      */
-    private HashMap<Integer,Double> sortHashMapByValue(HashMap<Integer,Double> map) {
-        if (map == null) {
-            return null;
-        } else {
-            List<Map.Entry<Integer,Double> > list = new ArrayList<Map.Entry<Integer,Double> >(map.entrySet());
-      
-            Collections.sort(list, new Comparator<Map.Entry<Integer,Double>>() {
-                public int compare(Map.Entry<Integer,Double> o1, Map.Entry<Integer,Double> o2) { 
-                    return (o2.getValue()).compareTo(o1.getValue()); 
-                } 
-            }); 
-              
-            HashMap<Integer,Double> res = new LinkedHashMap<Integer,Double>(); 
-            for (Map.Entry<Integer,Double> el : list) { 
-                res.put(el.getKey(), el.getValue()); 
+    BaseSet rank( int[] roots, long deadline ) {
+        RootSet key = new RootSet( roots );
+        BaseSet base = cache.get( key );
+        if ( base == null ) {
+            base = baseSet( roots );
+            cache.put( key, base );
+        }
+        if ( !base.converged ) {
+            iterate( base, deadline );
+        }
+        hubs = base.hubs;
+        authorities = base.authorities;
+        return base;
+    }
+
+    /**
+     * Maps the docIDs of the index to nodes of the graph through the page
+     * titles, the first time they are needed.
+     */
+    private void mapDocs() {
+        if ( docNode != null && docNode.length == Index.docNames.size() ) {
+            return;
+        }
+        docNode = new int[Index.docNames.size()];
+        nodeDoc = new int[graph.numNodes()];
+        Arrays.fill( docNode, -1 );
+        Arrays.fill( nodeDoc, -1 );
+        for ( Map.Entry<Integer,String> e : Index.docNames.entrySet() ) {
+            Integer node = titleToId.get( getFileName( e.getValue() ));
+            if ( node != null && e.getKey() < docNode.length ) {
+                docNode[e.getKey()] = node;
+                nodeDoc[node] = e.getKey();
             }
-            return res;
         }
-    } 
+        cache.clear();
+    }
 
 
     /**
-     * Write the first `k` entries of a hash map `map` to the file `fname`.
+     * Write the nodeIDs and scores of the `k` nodes with the highest scores
+     * to the file `fname`.
      *
-     * @param      map        A hash map
+     * @param      base       The base set of the scores
+     * @param      scores     The score of each node of the base set
      * @param      fname      The filename
      * @param      k          A number of entries to write
      */
-    void writeToFile(HashMap<Integer,Double> map, String fname, int k) {
-        try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(fname));
-            
-            if (map != null) {
-                int i = 0;
-                for (Map.Entry<Integer,Double> e : map.entrySet()) {
-                    i++;
-                    writer.write(e.getKey() + ": " + String.format("%.5g%n", e.getValue()));
-                    if (i >= k) break;
-                }
+    void writeToFile( BaseSet base, double[] scores, String fname, int k ) {
+        PriorityQueue<Integer> heap = new PriorityQueue<Integer>( (x, y) -> Double.compare( scores[x], scores[y] ));
+        for ( int i = 0; i < scores.length; i++ ) {
+            heap.add( i );
+            if ( heap.size() > k ) {
+                heap.poll();
             }
-            writer.close();
-        } catch (IOException e) {}
+        }
+        Integer[] top = heap.toArray( new Integer[0] );
+        Arrays.sort( top, (x, y) -> Double.compare( scores[y], scores[x] ));
+        try ( BufferedWriter writer = new BufferedWriter( new FileWriter( fname ))) {
+            for ( int i : top ) {
+                writer.write( nodes.name( base.nodes[i] ) + ": " + String.format( "%.5g%n", scores[i] ));
+            }
+        } catch ( IOException e ) {
+            System.err.println( "Error writing file " + fname );
+        }
     }
 
 
@@ -191,13 +614,85 @@ public class HITSRanker {
      * Rank all the documents in the links file. Produces two files:
      *  hubs_top_30.txt with documents containing top 30 hub scores
      *  authorities_top_30.txt with documents containing top 30 authority scores
+     * and saves both vectors in outputFilename.
+     *
+     * The whole graph is its own base set, so the iteration runs on the
+     * CSR arrays of the graph without copying them.
      */
     void rank() {
-        iterate(titleToId.keySet().toArray(new String[0]));
-        HashMap<Integer,Double> sortedHubs = sortHashMapByValue(hubs);
-        HashMap<Integer,Double> sortedAuthorities = sortHashMapByValue(authorities);
-        writeToFile(sortedHubs, "hubs_top_30.txt", 30);
-        writeToFile(sortedAuthorities, "authorities_top_30.txt", 30);
+        if ( graph == null ) {
+            return;
+        }
+        LinkGraph out = LinkGraph.of( graph );
+        LinkGraph in = LinkGraph.of( inGraph );
+        int[] identity = IntStream.range( 0, out.numNodes ).toArray();
+        BaseSet base = new BaseSet( identity, out.offsets, out.targets, in.offsets, in.targets );
+        long start = System.nanoTime();
+        iterate( base, Long.MAX_VALUE );
+        System.err.printf( "HITS of %d nodes in %.1f ms%n", out.numNodes, (System.nanoTime() - start) / 1e6 );
+        hubs = base.hubs;
+        authorities = base.authorities;
+        writeToFile( base, hubs, "hubs_top_30.txt", 30 );
+        writeToFile( base, authorities, "authorities_top_30.txt", 30 );
+        writeScores();
+        readScores();
+    }
+
+    /**
+     * Saves the global hubs and authorities as two columns of a score file,
+     * writing next to the old file and swapping.
+     */
+    void writeScores() {
+        float[][] columns = new float[2][hubs.length];
+        for ( int i = 0; i < hubs.length; i++ ) {
+            columns[0][i] = (float) hubs[i];
+            columns[1][i] = (float) authorities[i];
+        }
+        Path tmp = Paths.get( outputFilename + ".tmp" );
+        try {
+            StaticScoreFile.write( tmp.toString(), nodes.names(), hubs.length,
+                                   new String[] { StaticScores.HUBS, StaticScores.AUTHORITIES }, columns );
+            Files.move( tmp, Paths.get( outputFilename ), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+        } catch ( IOException e ) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Maps the saved global scores. Returns false if there are none.
+     */
+    boolean readScores() {
+        try {
+            scores = StaticScoreFile.open( outputFilename );
+            return true;
+        } catch ( FileNotFoundException e ) {
+            return false;
+        } catch ( IOException e ) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Joins a column of the saved global scores to the docIDs, through the
+     * page titles. Documents without a page get 0.
+     *
+     * @param      label     StaticScores.HUBS or StaticScores.AUTHORITIES
+     */
+    float[] docScores( String label, Map<Integer,String> docNames ) {
+        float[] docScores = new float[docNames.size()];
+        int column = scores == null ? -1 : scores.column( label );
+        if ( column < 0 ) {
+            return docScores;
+        }
+        for ( Map.Entry<Integer,String> e : docNames.entrySet() ) {
+            Integer node = titleToId.get( getFileName( e.getValue() ));
+            int index = node == null ? -1 : scores.node( nodes.name( node ));
+            if ( index >= 0 && e.getKey() < docScores.length ) {
+                docScores[e.getKey()] = scores.score( column, index );
+            }
+        }
+        return docScores;
     }
 
 
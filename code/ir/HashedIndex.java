@@ -38,6 +38,28 @@ public class HashedIndex implements Index {
         return index.get(token);
     }
 
+    /**
+     * Returns an iterator over the postings of a term.
+     */
+    public PostingsIterator iterator(String token) {
+        PostingsList list = index.get(token);
+        if (list == null) {
+            return PostingsIterator.empty();
+        }
+        return new ListPostingsIterator(list);
+    }
+
+    /**
+     * Returns df and cf of a term.
+     */
+    public TermStatistics getStatistics(String token) {
+        PostingsList list = index.get(token);
+        if (list == null) {
+            return new TermStatistics(0, 0);
+        }
+        return new TermStatistics(list.size(), list.totalFrequency());
+    }
+
     /**
      * No need for cleanup in a HashedIndex.
      */
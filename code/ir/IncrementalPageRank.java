@@ -0,0 +1,271 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.util.*;
+
+/**
+ * Keeps PageRank up to date as links change, by pushing residuals.
+ *
+ * With the rows of dead ends left empty, the PageRank vector is y/|y|,
+ * where y solves y = 1 + alpha P^T y and alpha = 1 - BORED. The residual
+ * r = 1 + alpha P^T y - y is zero for the solution. Changing the links
+ * of a node u only changes r on the old and new successors of u, and
+ * pushing a node's residual into y and on to its successors brings r
+ * back towards zero. Only nodes whose residual is above the tolerance
+ * are ever touched.
+ */
+public class IncrementalPageRank {
+
+    final double alpha;
+
+    /** Residual a node may keep without being pushed. */
+    final double tolerance;
+
+    /** The graph the vector was computed on. */
+    private final Graph base;
+
+    /** The successors of the nodes whose links have changed. */
+    private final HashMap<Integer, int[]> changed = new HashMap<Integer, int[]>();
+
+    private final BitSet removed = new BitSet();
+
+    /** Nodes whose residual has changed since the last push. */
+    private final BitSet dirty = new BitSet();
+
+    private int numNodes;
+
+    private double[] y;
+
+    private double[] r;
+
+    /** Number of pushes done by the last update. */
+    long pushes;
+
+    /** Number of distinct nodes pushed by the last update. */
+    int touched;
+
+    /**
+     * Starts from the PageRank x of graph, which is taken as converged.
+     * y is x scaled so that its sum is N / (1 - alpha + alpha D), where D
+     * is the probability held by the dead ends.
+     */
+    public IncrementalPageRank(Graph graph, double[] x, double bored, double epsilon) {
+        base = graph;
+        alpha = 1 - bored;
+        numNodes = graph.numNodes();
+        double dangling = 0;
+        double sum = 0;
+        for (int i = 0; i < numNodes; i++) {
+            sum += x[i];
+            if (graph.outDegree(i) == 0) {
+                dangling += x[i];
+            }
+        }
+        double norm = numNodes / (1 - alpha + alpha * dangling / sum) / sum;
+        y = new double[numNodes];
+        for (int i = 0; i < numNodes; i++) {
+            y[i] = x[i] * norm;
+        }
+        r = new double[numNodes];
+        // the error of x is at most the total residual / ((1 - alpha) |y|)
+        tolerance = epsilon * (1 - alpha) * norm * sum / numNodes;
+    }
+
+    /** Adds a node without links, and returns its number. */
+    public int addNode() {
+        if (numNodes == y.length) {
+            y = Arrays.copyOf(y, 2 * numNodes + 1);
+            r = Arrays.copyOf(r, 2 * numNodes + 1);
+        }
+        // y = 0 leaves the constant term as residual
+        r[numNodes] = 1;
+        dirty.set(numNodes);
+        return numNodes++;
+    }
+
+    public int numNodes() {
+        return numNodes;
+    }
+
+    /** Returns the current successors of a node. */
+    public int[] successors(int node) {
+        int[] s = changed.get(node);
+        if (s == null) {
+            if (node >= base.numNodes()) {
+                return new int[0];
+            }
+            s = new int[base.outDegree(node)];
+            base.successors(node, s);
+        }
+        return s;
+    }
+
+    /**
+     * Replaces the successors of a node, and moves the residual of the
+     * nodes that gain or lose its share.
+     */
+    public void setSuccessors(int node, int[] successors) {
+        int[] now = Arrays.stream(successors).sorted().distinct().toArray();
+        int[] before = successors(node);
+        if (before.length > 0) {
+            double share = alpha * y[node] / before.length;
+            for (int v : before) {
+                r[v] -= share;
+                dirty.set(v);
+            }
+        }
+        if (now.length > 0) {
+            double share = alpha * y[node] / now.length;
+            for (int v : now) {
+                r[v] += share;
+                dirty.set(v);
+            }
+        }
+        changed.put(node, now);
+    }
+
+    /**
+     * Removes a node's links. The node is left out of the vector; links
+     * still pointing to it behave like links to a dead end.
+     */
+    public void removeNode(int node) {
+        setSuccessors(node, new int[0]);
+        removed.set(node);
+    }
+
+    /**
+     * Pushes residuals until every node is within the tolerance.
+     */
+    public void push() {
+        pushes = 0;
+        BitSet seen = new BitSet();
+        BitSet queued = new BitSet();
+        int[] queue = new int[64];
+        int head = 0, tail = 0, size = 0;
+        for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+            if (Math.abs(r[i]) > tolerance) {
+                if (size == queue.length) {
+                    queue = grow(queue, head, size);
+                    head = 0;
+                    tail = size;
+                }
+                queue[tail] = i;
+                tail = (tail + 1) % queue.length;
+                size++;
+                queued.set(i);
+            }
+        }
+        dirty.clear();
+        int[] buffer = new int[16];
+        while (size > 0) {
+            int u = queue[head];
+            head = (head + 1) % queue.length;
+            size--;
+            queued.clear(u);
+            double ru = r[u];
+            y[u] += ru;
+            r[u] = 0;
+            pushes++;
+            seen.set(u);
+            int[] successors = changed.get(u);
+            int degree;
+            if (successors != null) {
+                degree = successors.length;
+            } else if (u < base.numNodes()) {
+                degree = base.outDegree(u);
+                if (buffer.length < degree) {
+                    buffer = new int[2 * degree];
+                }
+                base.successors(u, buffer);
+                successors = buffer;
+            } else {
+                degree = 0;
+            }
+            if (degree == 0) {
+                continue;
+            }
+            double share = alpha * ru / degree;
+            for (int k = 0; k < degree; k++) {
+                int v = successors[k];
+                r[v] += share;
+                if (!queued.get(v) && Math.abs(r[v]) > tolerance) {
+                    if (size == queue.length) {
+                        queue = grow(queue, head, size);
+                        head = 0;
+                        tail = size;
+                    }
+                    queue[tail] = v;
+                    tail = (tail + 1) % queue.length;
+                    size++;
+                    queued.set(v);
+                }
+            }
+        }
+        touched = seen.cardinality();
+    }
+
+    private static int[] grow(int[] queue, int head, int size) {
+        int[] bigger = new int[2 * queue.length];
+        for (int k = 0; k < size; k++) {
+            bigger[k] = queue[(head + k) % queue.length];
+        }
+        return bigger;
+    }
+
+    /** Returns the PageRank vector: y normalized, with removed nodes at 0. */
+    public double[] scores() {
+        double[] x = new double[numNodes];
+        double sum = 0;
+        for (int i = 0; i < numNodes; i++) {
+            if (!removed.get(i)) {
+                sum += y[i];
+            }
+        }
+        for (int i = 0; i < numNodes; i++) {
+            x[i] = removed.get(i) ? 0 : y[i] / sum;
+        }
+        return x;
+    }
+
+    /** Returns the graph with all changes applied. */
+    public Graph graph() {
+        return new Graph() {
+            public int numNodes() {
+                return numNodes;
+            }
+
+            public int numEdges() {
+                int edges = base.numEdges();
+                for (Map.Entry<Integer, int[]> e : changed.entrySet()) {
+                    int node = e.getKey();
+                    edges += e.getValue().length - (node < base.numNodes() ? base.outDegree(node) : 0);
+                }
+                return edges;
+            }
+
+            public int outDegree(int node) {
+                int[] s = changed.get(node);
+                return s != null ? s.length : node < base.numNodes() ? base.outDegree(node) : 0;
+            }
+
+            public int successors(int node, int[] buffer) {
+                int[] s = changed.get(node);
+                if (s == null) {
+                    return node < base.numNodes() ? base.successors(node, buffer) : 0;
+                }
+                System.arraycopy(s, 0, buffer, 0, s.length);
+                return s.length;
+            }
+
+            public Graph transpose() {
+                return LinkGraph.of(this).transpose();
+            }
+        };
+    }
+}
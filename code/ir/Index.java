@@ -24,12 +24,27 @@ public interface Index {
 
     public HashMap<Integer,Double> docEucLengths = new HashMap<Integer,Double>();
 
+    /** Query-independent scores (e.g. PageRank) of each docID. */
+    public StaticScores staticScores = new StaticScores();
+
     /** Inserts a token into the index. */
     public void insert( String token, int docID, int offset );
 
     /** Returns the postings for a given term. */
     public PostingsList getPostings( String token );
 
+    /**
+     * Returns an iterator over the postings for a given term. Unknown
+     * terms give an iterator without documents.
+     */
+    public PostingsIterator iterator( String token );
+
+    /**
+     * Returns the document frequency and collection frequency of a term,
+     * without fetching its postings.
+     */
+    public TermStatistics getStatistics( String token );
+
     /** This method is called on exit. */
     public void cleanup();
 
@@ -9,7 +9,10 @@ package ir;
 
 import java.io.*;
 import java.nio.charset.*;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Processes a directory structure and indexes all PDF and text files.
@@ -22,6 +25,9 @@ public class Indexer {
     /** K-gram index to be built up by this Indexer */
     KGramIndex kgIndex;
 
+    /** The term vectors of the indexed documents, for relevance feedback. */
+    ForwardIndex forwardIndex = new ForwardIndex();
+
     /** The next docID to be generated. */
     private int lastDocID = 0;
 
@@ -69,17 +75,20 @@ public class Indexer {
                         Reader reader = new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8);
                         Tokenizer tok = new Tokenizer(reader, true, false, true, patterns_file);
 
-                        // HashMap<String,Integer> uniqueTokens = new HashMap<String,Integer>();
+                        HashMap<String,Integer> uniqueTokens = new HashMap<String,Integer>();
 
                         int offset = 0;
                         while (tok.hasMoreTokens()) {
                             String token = tok.nextToken();
                             insertIntoIndex(docID, token, offset++);
 
-                            // uniqueTokens.put(token, uniqueTokens.getOrDefault(token, 0) + 1);
+                            uniqueTokens.merge(token, 1, Integer::sum);
+                        }
+                        Index.docNames.put(docID, f.getPath());
+                        Index.docLengths.put(docID, offset);
+                        if (forwardIndex != null) {
+                            forwardIndex.add(docID, uniqueTokens);
                         }
-                        index.docNames.put(docID, f.getPath());
-                        index.docLengths.put(docID, offset);
 
                         // Hasekll magic :)
                         // index.docEucLengths.put(docID,
@@ -95,13 +104,13 @@ public class Indexer {
     }
 
     public void calcEucLengths() {
-        int N = index.docNames.size();
+        int N = Index.docNames.size();
         HashMap<String, PostingsList> lindex = index.getLoadedIndex();
         int sizesub = "./../davisWiki/".length();
         String fileName = "";
         try {
             for (int docID = 0; docID < N; docID++) {
-                fileName = index.docNames.get(docID);
+                fileName = Index.docNames.get(docID);
                 // String docFile = fileName.substring(sizesub);
                 Reader reader = new InputStreamReader(new FileInputStream(fileName), StandardCharsets.UTF_8);
                 Tokenizer tok = new Tokenizer(reader, true, false, true, patterns_file);
@@ -132,6 +141,65 @@ public class Indexer {
         }
     }
 
+    /**
+     * Renumbers the indexed documents in the given order, so that the
+     * docID gaps in the postings get smaller: by PageRank, the documents
+     * found by most queries come first, by path, documents of the same
+     * directory get neighbouring docIDs. Rewrites the postings in memory,
+     * the document names and lengths, the static score columns and the
+     * forward index; the k-gram index holds no docIDs. Must be called
+     * before the index is written and before any query.
+     *
+     * @param pagerank the PageRank of each docID, for DocOrder.PAGERANK
+     * @return newID, the new docID of every old docID
+     */
+    public int[] reassignDocIDs(DocOrder order, float[] pagerank) {
+        int n = lastDocID;
+        Integer[] byOrder = new Integer[n];
+        for (int d = 0; d < n; d++) {
+            byOrder[d] = d;
+        }
+        if (order == DocOrder.PAGERANK) {
+            Arrays.sort(byOrder, (a, b) -> {
+                float ra = pagerank != null && a < pagerank.length ? pagerank[a] : 0;
+                float rb = pagerank != null && b < pagerank.length ? pagerank[b] : 0;
+                return ra != rb ? Float.compare(rb, ra) : Integer.compare(a, b);
+            });
+        } else if (order == DocOrder.PATH) {
+            // documents that could not be read have no name and go last
+            Arrays.sort(byOrder, Comparator.comparing((Integer d) -> Index.docNames.get(d),
+                    Comparator.nullsLast(Comparator.naturalOrder())));
+        }
+        int[] newID = new int[n];
+        for (int i = 0; i < n; i++) {
+            newID[byOrder[i]] = i;
+        }
+
+        for (PostingsList list : index.getLoadedIndex().values()) {
+            list.renumber(newID);
+        }
+        HashMap<Integer, String> names = new HashMap<Integer, String>(Index.docNames);
+        HashMap<Integer, Integer> lengths = new HashMap<Integer, Integer>(Index.docLengths);
+        HashMap<Integer, Double> eucLengths = new HashMap<Integer, Double>(Index.docEucLengths);
+        Index.docNames.clear();
+        Index.docLengths.clear();
+        Index.docEucLengths.clear();
+        for (Map.Entry<Integer, String> e : names.entrySet()) {
+            Index.docNames.put(newID[e.getKey()], e.getValue());
+        }
+        for (Map.Entry<Integer, Integer> e : lengths.entrySet()) {
+            Index.docLengths.put(newID[e.getKey()], e.getValue());
+        }
+        for (Map.Entry<Integer, Double> e : eucLengths.entrySet()) {
+            Index.docEucLengths.put(newID[e.getKey()], e.getValue());
+        }
+        Index.staticScores.permute(newID);
+        if (forwardIndex != null) {
+            forwardIndex.renumber(newID);
+        }
+        return newID;
+    }
+
     // public void calcEucLengths(File f, boolean is_indexing) {
     //     // do not try to index fs that cannot be read
     //     if (is_indexing) {
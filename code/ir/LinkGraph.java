@@ -0,0 +1,260 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * A directed graph in compressed sparse row form: the out-links of node i
+ * are targets[offsets[i]] .. targets[offsets[i+1]-1], sorted and without
+ * duplicates.
+ */
+public class LinkGraph implements Graph {
+
+    /** The number of nodes. */
+    final int numNodes;
+
+    /** Start of the out-links of each node, with numNodes+1 entries. */
+    final int[] offsets;
+
+    /** The targets of all links, grouped by source node. */
+    final int[] targets;
+
+    LinkGraph(int numNodes, int[] offsets, int[] targets) {
+        this.numNodes = numNodes;
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    /**
+     * Builds a graph from the first numEdges (from, to) pairs. Duplicate
+     * links are kept only once.
+     */
+    public static LinkGraph fromEdges(int numNodes, int[] from, int[] to, int numEdges) {
+        int[] offsets = new int[numNodes + 1];
+        for (int e = 0; e < numEdges; e++) {
+            offsets[from[e] + 1]++;
+        }
+        for (int i = 0; i < numNodes; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] targets = new int[numEdges];
+        int[] fill = Arrays.copyOf(offsets, numNodes);
+        for (int e = 0; e < numEdges; e++) {
+            targets[fill[from[e]]++] = to[e];
+        }
+        return new LinkGraph(numNodes, offsets, sortRows(numNodes, offsets, targets));
+    }
+
+    /**
+     * Sorts each row and squeezes out duplicate links, moving offsets
+     * accordingly.
+     *
+     * @return the targets, shortened if there were duplicates.
+     */
+    private static int[] sortRows(int numNodes, int[] offsets, int[] targets) {
+        int w = 0;
+        for (int i = 0; i < numNodes; i++) {
+            int start = offsets[i], end = offsets[i + 1];
+            Arrays.sort(targets, start, end);
+            offsets[i] = w;
+            for (int k = start; k < end; k++) {
+                if (k == start || targets[k] != targets[k - 1]) {
+                    targets[w++] = targets[k];
+                }
+            }
+        }
+        offsets[numNodes] = w;
+        return w == targets.length ? targets : Arrays.copyOf(targets, w);
+    }
+
+    /**
+     * Receives the lines of a links file from scan().
+     */
+    interface RowConsumer {
+        /** The links of one line are targets[0] .. targets[count-1]. */
+        void row(int source, int[] targets, int count) throws IOException;
+    }
+
+    /**
+     * Reads a links file, where each line is
+     *   nodeID;outNodeID1,outNodeID2,...,outNodeIDK
+     * The file is parsed byte by byte, the names are numbered in order
+     * of first appearance in titles, and the links of each line are kept
+     * as one row, so the graph is built without a list of link pairs.
+     */
+    public static LinkGraph read(String filename, TitleMap titles) throws IOException {
+        int[][] targets = { new int[1 << 16] };
+        int[] numTargets = { 0 };
+        // source and first target of each line
+        int[][] rowSource = { new int[1 << 10] };
+        int[][] rowStart = { new int[1 << 10] };
+        int[] numRows = { 0 };
+        scan(filename, titles, (source, links, count) -> {
+            if (numRows[0] == rowSource[0].length) {
+                rowSource[0] = Arrays.copyOf(rowSource[0], 2 * numRows[0]);
+                rowStart[0] = Arrays.copyOf(rowStart[0], 2 * numRows[0]);
+            }
+            rowSource[0][numRows[0]] = source;
+            rowStart[0][numRows[0]++] = numTargets[0];
+            if (numTargets[0] + count > targets[0].length) {
+                targets[0] = Arrays.copyOf(targets[0], 2 * (numTargets[0] + count));
+            }
+            System.arraycopy(links, 0, targets[0], numTargets[0], count);
+            numTargets[0] += count;
+        });
+        return fromRows(titles.size(), rowSource[0], rowStart[0], numRows[0], targets[0], numTargets[0]);
+    }
+
+    /**
+     * Parses a links file byte by byte and hands every line to rows,
+     * numbering the names in titles in order of first appearance. The
+     * file is only streamed, so it can be much larger than memory.
+     */
+    static void scan(String filename, TitleMap titles, RowConsumer rows) throws IOException {
+        int[] targets = new int[1 << 10];
+        int numTargets = 0;
+        int source = -1;
+        byte[] token = new byte[64];
+        int length = 0;
+        byte[] buf = new byte[1 << 16];
+        try (InputStream in = new FileInputStream(filename)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    byte c = buf[i];
+                    if (c == ';' && source < 0) {
+                        source = titles.add(token, 0, length);
+                        length = 0;
+                    } else if (c == ',' || c == '\n' || c == '\r') {
+                        if (length > 0) {
+                            int node = titles.add(token, 0, length);
+                            if (source >= 0) {
+                                if (numTargets == targets.length) {
+                                    targets = Arrays.copyOf(targets, 2 * numTargets);
+                                }
+                                targets[numTargets++] = node;
+                            }
+                        }
+                        if (c == '\n' && source >= 0) {
+                            rows.row(source, targets, numTargets);
+                            source = -1;
+                            numTargets = 0;
+                        }
+                        length = 0;
+                    } else {
+                        if (length == token.length) {
+                            token = Arrays.copyOf(token, 2 * length);
+                        }
+                        token[length++] = c;
+                    }
+                }
+            }
+        }
+        // the last line need not end with a newline
+        if (length > 0) {
+            int node = titles.add(token, 0, length);
+            if (source >= 0) {
+                if (numTargets == targets.length) {
+                    targets = Arrays.copyOf(targets, numTargets + 1);
+                }
+                targets[numTargets++] = node;
+            }
+        }
+        if (source >= 0) {
+            rows.row(source, targets, numTargets);
+        }
+    }
+
+    /**
+     * Builds a graph from the rows of a links file, moving them into node
+     * order; a node may have several rows.
+     */
+    private static LinkGraph fromRows(int numNodes, int[] rowSource, int[] rowStart, int numRows, int[] targets, int numTargets) {
+        int[] offsets = new int[numNodes + 1];
+        for (int r = 0; r < numRows; r++) {
+            int end = r + 1 < numRows ? rowStart[r + 1] : numTargets;
+            offsets[rowSource[r] + 1] += end - rowStart[r];
+        }
+        for (int i = 0; i < numNodes; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] fill = Arrays.copyOf(offsets, numNodes);
+        int[] rows = new int[numTargets];
+        for (int r = 0; r < numRows; r++) {
+            int end = r + 1 < numRows ? rowStart[r + 1] : numTargets;
+            int count = end - rowStart[r];
+            System.arraycopy(targets, rowStart[r], rows, fill[rowSource[r]], count);
+            fill[rowSource[r]] += count;
+        }
+        return new LinkGraph(numNodes, offsets, sortRows(numNodes, offsets, rows));
+    }
+
+    /**
+     * Returns graph itself if it already is a LinkGraph, and otherwise
+     * decodes it into one.
+     */
+    public static LinkGraph of(Graph graph) {
+        if (graph instanceof LinkGraph) {
+            return (LinkGraph) graph;
+        }
+        int n = graph.numNodes();
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[graph.numEdges()];
+        int[] buffer = new int[16];
+        for (int i = 0; i < n; i++) {
+            int degree = graph.outDegree(i);
+            if (buffer.length < degree) {
+                buffer = new int[2 * degree];
+            }
+            graph.successors(i, buffer);
+            System.arraycopy(buffer, 0, targets, offsets[i], degree);
+            offsets[i + 1] = offsets[i] + degree;
+        }
+        return new LinkGraph(n, offsets, targets);
+    }
+
+    public int numNodes() {
+        return numNodes;
+    }
+
+    public int numEdges() {
+        return offsets[numNodes];
+    }
+
+    public int successors(int node, int[] buffer) {
+        int degree = offsets[node + 1] - offsets[node];
+        System.arraycopy(targets, offsets[node], buffer, 0, degree);
+        return degree;
+    }
+
+    public int outDegree(int node) {
+        return offsets[node + 1] - offsets[node];
+    }
+
+    /** Returns the graph with every link reversed, i.e. the in-links of each node. */
+    public LinkGraph transpose() {
+        int[] tOffsets = new int[numNodes + 1];
+        for (int e = 0; e < targets.length; e++) {
+            tOffsets[targets[e] + 1]++;
+        }
+        for (int i = 0; i < numNodes; i++) {
+            tOffsets[i + 1] += tOffsets[i];
+        }
+        int[] tTargets = new int[targets.length];
+        int[] fill = Arrays.copyOf(tOffsets, numNodes);
+        // Sources are visited in increasing order, so each row comes out sorted
+        for (int i = 0; i < numNodes; i++) {
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                tTargets[fill[targets[k]]++] = i;
+            }
+        }
+        return new LinkGraph(numNodes, tOffsets, tTargets);
+    }
+}
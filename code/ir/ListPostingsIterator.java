@@ -0,0 +1,100 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.util.ArrayList;
+
+/**
+ * Iterates over a postings list that is already in main memory. Since the
+ * list can be accessed at random, advance() can gallop: it probes 1, 2, 4,
+ * ... entries ahead and then binary searches the last interval.
+ */
+public class ListPostingsIterator extends PostingsIterator {
+
+    private final PostingsList list;
+
+    /** Index of the current entry in the list. */
+    private int i = -1;
+
+    private int doc = -1;
+
+    /** Offsets of the current entry, fetched when positions are asked for. */
+    private ArrayList<Integer> offsets;
+
+    private int nextOffset;
+
+    /** Whether advance() gallops or steps through the list. */
+    private boolean galloping = false;
+
+    public ListPostingsIterator(PostingsList list) {
+        this.list = list;
+    }
+
+    public void setGalloping(boolean galloping) {
+        this.galloping = galloping;
+    }
+
+    public int docID() {
+        return doc;
+    }
+
+    public int nextDoc() {
+        i++;
+        touched++;
+        offsets = null;
+        doc = i < list.size() ? list.get(i).docID : NO_MORE_DOCS;
+        return doc;
+    }
+
+    public int advance(int target) {
+        if (!galloping) {
+            return super.advance(target);
+        }
+        int n = list.size();
+        int lo = i + 1;
+        int hi = lo;
+        int step = 1;
+        while (hi < n && list.get(hi).docID < target) {
+            touched++;
+            lo = hi + 1;
+            hi += step;
+            step <<= 1;
+        }
+        // The first entry >= target is in [lo, end)
+        int end = Math.min(hi + 1, n);
+        while (lo < end) {
+            touched++;
+            int mid = (lo + end) >>> 1;
+            if (list.get(mid).docID < target) {
+                lo = mid + 1;
+            } else {
+                end = mid;
+            }
+        }
+        i = lo;
+        offsets = null;
+        doc = i < n ? list.get(i).docID : NO_MORE_DOCS;
+        return doc;
+    }
+
+    public int freq() {
+        return list.get(i).getFrequency();
+    }
+
+    public int nextPosition() {
+        if (offsets == null) {
+            offsets = list.get(i).getOffsets();
+            nextOffset = 0;
+        }
+        return offsets.get(nextOffset++);
+    }
+
+    public long cost() {
+        return list.size();
+    }
+}
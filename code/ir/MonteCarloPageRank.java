@@ -0,0 +1,213 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Estimates PageRank by random walks on a LinkGraph. The walks are split
+ * over threads; every thread has its own random generator and its own
+ * visit counters, which are only added together between rounds.
+ */
+public class MonteCarloPageRank {
+
+    /**
+     * The estimators of Avrachenkov et al. "Monte Carlo methods in PageRank
+     * computation", numbered as in the assignment.
+     */
+    enum Method {
+        /** Random start, count where the walk ends. */
+        MC1,
+        /** Start m times from every node, count where the walk ends. */
+        MC2,
+        /** Start m times from every node, count every visit, stop at dead ends. */
+        MC4,
+        /** Random start, count every visit, stop at dead ends. */
+        MC5
+    }
+
+    /** Number of walks between two checks of the top-k when stopping early. */
+    final static int ROUND_WALKS = 100000;
+
+    /** Number of rounds the top-k must stay the same to stop early. */
+    final static int STABLE_ROUNDS = 3;
+
+    final LinkGraph graph;
+
+    /** Probability that a walk stops at each step. */
+    final double bored;
+
+    final int threads;
+
+    /** Total number of steps taken by the last run. */
+    long steps;
+
+    /** Number of walks done by the last run. */
+    long walks;
+
+    private long seed = 42;
+
+    public MonteCarloPageRank(LinkGraph graph, double bored, int threads) {
+        this.graph = graph;
+        this.bored = bored;
+        this.threads = Math.max(1, threads);
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Runs numWalks walks. If topK is positive, stops as soon as the order
+     * of the k highest nodes has not changed for STABLE_ROUNDS rounds.
+     *
+     * @return the estimated PageRank of each node.
+     */
+    public double[] run(Method method, long numWalks, int topK) {
+        int n = graph.numNodes;
+        boolean completePath = method == Method.MC4 || method == Method.MC5;
+        boolean cyclic = method == Method.MC2 || method == Method.MC4;
+        long[][] counts = new long[threads][n];
+        long[] visits = new long[threads];
+        long[] stepCount = new long[threads];
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[threads];
+        for (int t = 0; t < threads; t++) {
+            randoms[t] = root.split();
+        }
+
+        long round = topK > 0 ? Math.max(ROUND_WALKS, n) : numWalks;
+        double[] rank = new double[n];
+        int[] lastTop = null;
+        int stable = 0;
+        long done = 0;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            while (done < numWalks) {
+                long first = done;
+                long count = Math.min(round, numWalks - done);
+                List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+                for (int t = 0; t < threads; t++) {
+                    int thread = t;
+                    long from = first + count * t / threads;
+                    long to = first + count * (t + 1) / threads;
+                    tasks.add(() -> {
+                        long[] c = counts[thread];
+                        SplittableRandom random = randoms[thread];
+                        long taken = 0;
+                        for (long w = from; w < to; w++) {
+                            int start = cyclic ? (int) (w % n) : random.nextInt(n);
+                            taken += walk(start, completePath, random, c);
+                        }
+                        // a complete path counts its start and every step
+                        stepCount[thread] += taken;
+                        visits[thread] += completePath ? taken + (to - from) : to - from;
+                        return null;
+                    });
+                }
+                for (Future<Void> f : pool.invokeAll(tasks)) {
+                    f.get();
+                }
+                done += count;
+
+                if (topK > 0 && done < numWalks) {
+                    merge(counts, visits, rank);
+                    int[] top = top(rank, topK);
+                    stable = Arrays.equals(top, lastTop) ? stable + 1 : 0;
+                    lastTop = top;
+                    if (stable >= STABLE_ROUNDS) {
+                        break;
+                    }
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        } finally {
+            pool.shutdown();
+        }
+        walks = done;
+        steps = 0;
+        for (long s : stepCount) {
+            steps += s;
+        }
+        merge(counts, visits, rank);
+        return rank;
+    }
+
+    /**
+     * Walks from start until the surfer gets bored. Counts the end node, or
+     * every node visited if completePath is set, in which case the walk
+     * also stops at dead ends.
+     *
+     * @return the number of steps taken.
+     */
+    private long walk(int start, boolean completePath, SplittableRandom random, long[] count) {
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        int node = start;
+        long taken = 0;
+        if (completePath) {
+            count[node]++;
+        }
+        while (random.nextDouble() >= bored) {
+            int from = offsets[node], to = offsets[node + 1];
+            if (from == to) {
+                if (completePath) {
+                    break;
+                }
+                node = random.nextInt(graph.numNodes);
+            } else {
+                node = targets[from + random.nextInt(to - from)];
+            }
+            taken++;
+            if (completePath) {
+                count[node]++;
+            }
+        }
+        if (!completePath) {
+            count[node]++;
+        }
+        return taken;
+    }
+
+    /** Adds the counters of all threads into rank, as probabilities. */
+    private void merge(long[][] counts, long[] visits, double[] rank) {
+        long total = 0;
+        for (long v : visits) {
+            total += v;
+        }
+        Arrays.fill(rank, 0);
+        for (long[] c : counts) {
+            for (int i = 0; i < rank.length; i++) {
+                rank[i] += c[i];
+            }
+        }
+        for (int i = 0; i < rank.length; i++) {
+            rank[i] /= total;
+        }
+    }
+
+    /** Returns the k highest nodes of rank, highest first. */
+    static int[] top(double[] rank, int k) {
+        PriorityQueue<Integer> heap = new PriorityQueue<Integer>((x, y) -> rank[x] != rank[y] ? Double.compare(rank[x], rank[y]) : y - x);
+        for (int i = 0; i < rank.length; i++) {
+            if (heap.size() < k) {
+                heap.add(i);
+            } else if (rank[i] > rank[heap.peek()]) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+        int[] top = new int[heap.size()];
+        for (int i = top.length - 1; i >= 0; i--) {
+            top[i] = heap.poll();
+        }
+        return top;
+    }
+}
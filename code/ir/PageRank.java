@@ -1,48 +1,83 @@
 package ir;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.IntStream;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 
 public class PageRank {
 
 	/**
-	 * Maximal number of documents. We're assuming here that we
-	 * don't have more docs than we can keep in main memory.
+	 * Mapping between document names and document numbers.
 	 */
-	final static int MAX_NUMBER_OF_DOCS = 2000000;
+	TitleMap docNumber = new TitleMap();
+
+	HashMap<String, Integer> docFileNumber = new HashMap<String, Integer>();
 
 	/**
-	 * Mapping from document names to document numbers.
+	 * The link graph, in compressed sparse row form or gap compressed.
 	 */
-	HashMap<String, Integer> docNumber = new HashMap<String, Integer>();
+	Graph graph;
 
-	HashMap<String, Integer> docFileNumber = new HashMap<String, Integer>();
+	/**
+	 * The in-links of each node, built on first use by the parallel
+	 * and Gauss-Seidel iterations.
+	 */
+	Graph inGraph;
 
+	/**
+	 * Whether the link graph is kept gap compressed in memory.
+	 */
+	boolean compressGraph = false;
 
 	/**
-	 * Mapping from document numbers to document names
+	 * Number of threads used by compute(). With more than one thread
+	 * the parallel pull iteration is used.
 	 */
-	String[] docName = new String[MAX_NUMBER_OF_DOCS];
+	int parallelism = 1;
 
 	/**
-	 * A memory-efficient representation of the transition matrix.
-	 * The outlinks are represented as a HashMap, whose keys are
-	 * the numbers of the documents linked from.
-	 * <p>
-	 *
-	 * The value corresponding to key i is a HashMap whose keys are
-	 * all the numbers of documents j that i links to.
-	 * <p>
-	 *
-	 * If there are no outlinks from i, then the value corresponding
-	 * key i is null.
+	 * Number of worker processes used by compute(). With more than one
+	 * the links are split over processes (see DistributedPageRank).
 	 */
-	HashMap<Integer, HashMap<Integer, Boolean>> link = new HashMap<Integer, HashMap<Integer, Boolean>>();
+	int workers = 1;
 
 	/**
-	 * The number of outlinks from each node.
+	 * Number of nodes handed to a thread at a time by the parallel
+	 * iteration.
 	 */
-	int[] out = new int[MAX_NUMBER_OF_DOCS];
+	final static int BLOCK_SIZE = 4096;
+
+	/**
+	 * The ways of solving for the PageRank vector.
+	 */
+	enum Solver {
+		/** Power iteration, every node is updated from the previous vector. */
+		JACOBI,
+		/** Every node is updated from the newest values of its in-links. */
+		GAUSS_SEIDEL,
+		/** Power iteration with a periodic quadratic extrapolation step. */
+		EXTRAPOLATION,
+		/** Random walks (MC4), stopped when the top 30 no longer changes. */
+		MONTE_CARLO
+	}
+
+	/** The solver used by compute(). */
+	Solver solver = Solver.JACOBI;
+
+	/** Whether compute() starts from the vector saved in outputFilename. */
+	boolean warmStart = false;
+
+	/** Number of power iterations between two extrapolation steps. */
+	final static int EXTRAPOLATION_PERIOD = 10;
+
+	/** Number of walks started from each node by the Monte Carlo solver. */
+	final static int WALKS_PER_NODE = 10;
+
+	/** Number of iterations done by the last computation. */
+	int iterations = 0;
 
 	/**
 	 * The probability that the surfer will be bored, stop
@@ -62,50 +97,357 @@ public class PageRank {
 
 	private String outputFilename = "./index/pagerank";
 
+	/**
+	 * The teleport sets of the topic-sensitive PageRank, one topic per
+	 * line: topic;title1,title2,... with titles as in davisTitles.
+	 */
+	private String topicsFilename = "./data/topics.txt";
+
+	private String topicsOutputFilename = "./index/topics";
+
+	/**
+	 * The link partitions and rank files of the out-of-core computation.
+	 */
+	private String blocksDirectory = "./index/pagerank-blocks";
+
+	/**
+	 * Number of nodes whose ranks are held in memory at a time by the
+	 * out-of-core computation.
+	 */
+	int blockSize = 1 << 20;
+
 	double[] a;
 
+	/**
+	 * The saved PageRank, memory mapped from outputFilename.
+	 */
+	StaticScoreFile scores;
+
+	/**
+	 * The state kept between incremental updates of the link graph.
+	 */
+	IncrementalPageRank incremental;
+
+	/**
+	 * The saved topic-sensitive PageRank, one column per topic.
+	 */
+	StaticScoreFile topicScores;
+
 	private int noOfDocs = 0;
 
 	/* --------------------------------------------- */
 
+	/**
+	 * Creates a PageRank. The link graph is only read when it is needed
+	 * for computing, so searching with a saved PageRank does not depend
+	 * on the size of the graph.
+	 */
 	public PageRank() {
-		this.noOfDocs = readDocs();
+	}
+
+	/**
+	 * Creates a PageRank over an already built graph, without reading
+	 * any files.
+	 */
+	PageRank(Graph graph) {
+		this.graph = graph;
+		this.noOfDocs = graph.numNodes();
+	}
+
+	public void setParallelism(int threads) {
+		parallelism = Math.max(1, threads);
+	}
+
+	public void setSolver(Solver solver) {
+		this.solver = solver;
+	}
+
+	public void setWarmStart(boolean warmStart) {
+		this.warmStart = warmStart;
+	}
+
+	public void setWorkers(int workers) {
+		this.workers = Math.max(1, workers);
+	}
+
+	public void setBlockSize(int blockSize) {
+		this.blockSize = Math.max(1, blockSize);
+	}
+
+	public void setCompressGraph(boolean compressGraph) {
+		this.compressGraph = compressGraph;
+	}
+
+	/**
+	 * Returns the link graph, reading it on first use.
+	 */
+	Graph graph() {
+		if (graph == null) {
+			noOfDocs = readDocs();
+			if (compressGraph) {
+				CompressedGraph compressed = CompressedGraph.compress(graph);
+				System.err.printf("Compressed the links to %.2f bits per link, plus %.2f for the index%n",
+						compressed.bitsPerEdge(), compressed.indexBitsPerEdge());
+				graph = compressed;
+			}
+		}
+		return graph;
 	}
 
 	public void compute() {
-		System.err.println("Computing PageRank...");
-		iterate(noOfDocs, 1000);
+		System.err.println("Computing PageRank with " + solver + (warmStart ? " from the saved vector" : "") + "...");
+		graph();
+		solve(noOfDocs, 1000);
 		writeToFile();
 		System.err.println("Done computing PageRank and writing...");
-		readDavisTitle();
+		readPageRank();
+	}
+
+	/**
+	 * Computes PageRank without reading the link graph into memory: the
+	 * links are partitioned on disk by target block, and each iteration
+	 * streams the partitions (see BlockPageRank). Gives the same vector as
+	 * the JACOBI solver of compute().
+	 */
+	public void computeOutOfCore() {
+		System.err.println("Computing PageRank out of core, " + blockSize + " nodes per block...");
+		docNumber = new TitleMap();
+		try {
+			BlockPageRank blocks = BlockPageRank.partition(linksFilename, docNumber, new File(blocksDirectory), blockSize);
+			System.err.println("Partitioned " + blocks.numEdges + " links of " + blocks.numNodes + " documents into " + blocks.numBlocks + " blocks");
+			blocks.iterate(BORED, EPSILON, 1000);
+			noOfDocs = blocks.numNodes;
+			iterations = blocks.iterations;
+			a = blocks.scores();
+			blocks.delete();
+		} catch (FileNotFoundException e) {
+			System.err.println("File " + linksFilename + " not found!");
+			return;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		writeToFile();
+		System.err.println("Done computing PageRank and writing...");
+		readPageRank();
 	}
 
 	void writeToFile() {
-		try (FileOutputStream stream = new FileOutputStream(outputFilename); 
-				ObjectOutputStream out = new ObjectOutputStream(stream)) {
-			out.writeObject(a);
-			out.writeObject(docName);
-			stream.close();
-		}catch (IOException e) {
+		float[] column = new float[a.length];
+		for (int i = 0; i < a.length; i++) {
+			column[i] = (float) a[i];
+		}
+		// write next to the old file and swap, so that readers never see half a file
+		Path tmp = Paths.get(outputFilename + ".tmp");
+		try {
+			StaticScoreFile.write(tmp.toString(), docNumber.names(), a.length, new String[] { StaticScores.PAGERANK }, new float[][] { column });
+			Files.move(tmp, Paths.get(outputFilename), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Applies the changes in a delta file to the link graph, and updates
+	 * the saved PageRank.
+	 */
+	public void update(String deltaFilename) {
+		try {
+			update(GraphDelta.read(deltaFilename));
+		} catch (IOException e) {
+			System.err.println("Error reading file " + deltaFilename);
+		}
+	}
+
+	/**
+	 * Applies changes to the link graph, and updates the PageRank by
+	 * pushing residuals from the nodes whose links changed, instead of
+	 * iterating over the whole graph. The new vector replaces the saved
+	 * one atomically.
+	 */
+	public void update(GraphDelta delta) {
+		graph();
+		if (incremental == null) {
+			double[] x = a != null && a.length == noOfDocs ? a : readSavedVector(noOfDocs);
+			if (x == null) {
+				compute();
+				x = a;
+			}
+			incremental = new IncrementalPageRank(graph, x, BORED, EPSILON);
+		}
+		long startNanos = System.nanoTime();
+
+		// the new successors of every node whose links change
+		HashMap<Integer, TreeSet<Integer>> changed = new HashMap<Integer, TreeSet<Integer>>();
+		for (String[] link : delta.added) {
+			successorSet(changed, node(link[0])).add(node(link[1]));
+		}
+		for (String[] link : delta.removed) {
+			int from = docNumber.get(link[0]);
+			int to = docNumber.get(link[1]);
+			if (from >= 0 && to >= 0) {
+				successorSet(changed, from).remove(to);
+			}
+		}
+		for (Map.Entry<Integer, TreeSet<Integer>> e : changed.entrySet()) {
+			incremental.setSuccessors(e.getKey(), e.getValue().stream().mapToInt(Integer::intValue).toArray());
+		}
+		for (String name : delta.removedNodes) {
+			int node = docNumber.get(name);
+			if (node >= 0) {
+				incremental.removeNode(node);
+			}
+		}
+		incremental.push();
+
+		a = incremental.scores();
+		graph = incremental.graph();
+		inGraph = null;
+		noOfDocs = incremental.numNodes();
+		System.err.printf("Updated PageRank for %d changes in %.1f ms (%d pushes on %d nodes)%n",
+				delta.size(), (System.nanoTime() - startNanos) / 1e6, incremental.pushes, incremental.touched);
+		writeToFile();
+		readPageRank();
+	}
+
+	/**
+	 * Returns the node with the given name, adding it if it is new.
+	 */
+	private int node(String name) {
+		int node = docNumber.get(name);
+		if (node < 0) {
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			node = docNumber.add(bytes, 0, bytes.length);
+			incremental.addNode();
+		}
+		return node;
+	}
+
+	private TreeSet<Integer> successorSet(HashMap<Integer, TreeSet<Integer>> changed, int node) {
+		TreeSet<Integer> set = changed.get(node);
+		if (set == null) {
+			set = new TreeSet<Integer>();
+			for (int v : incremental.successors(node)) {
+				set.add(v);
+			}
+			changed.put(node, set);
+		}
+		return set;
+	}
+
 	void readPageRank() {
-		try (FileInputStream stream = new FileInputStream(outputFilename); 
-				ObjectInputStream in = new ObjectInputStream(stream)) {
+		try {
 			System.err.println("Reading PageRank from file...");
-			a = (double[]) in.readObject();
-			docName = (String[]) in.readObject();
-			in.close();
-			stream.close();
-			// System.err.println("Done reading PageRank from file...");
+			scores = StaticScoreFile.open(outputFilename);
 
 			// read davisTitles
 			readDavisTitle();
-		}catch (IOException | ClassNotFoundException e) {
+		} catch (FileNotFoundException e) {
+			System.err.println("PageRank file " + outputFilename + " not found");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Computes one PageRank per topic of the topics file, where the random
+	 * jumps (and the jumps from dead ends) only land on the pages of the
+	 * topic, and saves them as one score file.
+	 */
+	public void computeTopics() {
+		graph();
+		if (docFileNumber.isEmpty()) {
+			readDavisTitle();
+		}
+		ArrayList<String> topics = new ArrayList<String>();
+		ArrayList<int[]> seeds = new ArrayList<int[]>();
+		for (Map.Entry<String, List<String>> e : readTopicSeeds().entrySet()) {
+			int[] nodes = e.getValue().stream()
+					.map(docFileNumber::get).filter(Objects::nonNull)
+					.mapToInt(id -> docNumber.get(Integer.toString(id))).filter(n -> n >= 0)
+					.distinct().toArray();
+			if (nodes.length == 0) {
+				System.err.println("Topic " + e.getKey() + " has no pages in the link graph");
+				continue;
+			}
+			topics.add(e.getKey());
+			seeds.add(nodes);
+		}
+		if (topics.isEmpty()) {
+			return;
+		}
+		System.err.println("Computing PageRank for " + topics.size() + " topics...");
+		int k = topics.size();
+		double[] x = iterateTopics(seeds.toArray(new int[0][]), 1000);
+		float[][] columns = new float[k][noOfDocs];
+		for (int i = 0; i < noOfDocs; i++) {
+			for (int t = 0; t < k; t++) {
+				columns[t][i] = (float) x[i * k + t];
+			}
+		}
+		Path tmp = Paths.get(topicsOutputFilename + ".tmp");
+		try {
+			StaticScoreFile.write(tmp.toString(), docNumber.names(), noOfDocs, topics.toArray(new String[0]), columns);
+			Files.move(tmp, Paths.get(topicsOutputFilename), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		readTopics();
+	}
+
+	/**
+	 * Reads the topics file, as topic name to page titles.
+	 */
+	LinkedHashMap<String, List<String>> readTopicSeeds() {
+		LinkedHashMap<String, List<String>> topics = new LinkedHashMap<String, List<String>>();
+		try (BufferedReader in = new BufferedReader(new FileReader(topicsFilename))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				int index = line.indexOf(";");
+				if (index <= 0) {
+					continue;
+				}
+				ArrayList<String> titles = new ArrayList<String>();
+				for (String title : line.substring(index + 1).split(",")) {
+					if (!title.isEmpty()) {
+						titles.add(title.trim());
+					}
+				}
+				topics.put(line.substring(0, index).trim(), titles);
+			}
+		} catch (FileNotFoundException e) {
+			System.err.println("Topics file " + topicsFilename + " not found");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return topics;
+	}
+
+	void readTopics() {
+		try {
+			topicScores = StaticScoreFile.open(topicsOutputFilename);
+			if (docFileNumber.isEmpty()) {
+				readDavisTitle();
+			}
+		} catch (FileNotFoundException e) {
+			System.err.println("Topic PageRank file " + topicsOutputFilename + " not found");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Returns the number of saved topic vectors.
+	 */
+	public int numTopics() {
+		return topicScores == null ? 0 : topicScores.labels.length;
+	}
+
+	/**
+	 * Returns true if a saved PageRank has been read.
+	 */
+	public boolean isLoaded() {
+		return scores != null;
 	}
 
 	void readDavisTitle() {
@@ -134,124 +476,540 @@ public class PageRank {
 	 * @return the number of documents read.
 	 */
 	int readDocs() {
-		int fileIndex = 0;
+		docNumber = new TitleMap();
 		try {
 			System.err.print("Reading file... ");
-			BufferedReader in = new BufferedReader(new FileReader(linksFilename));
-			String line;
-			while ((line = in.readLine()) != null && fileIndex < MAX_NUMBER_OF_DOCS) {
-				int index = line.indexOf(";");
-				String title = line.substring(0, index);
-				Integer fromdoc = docNumber.get(title);
-
-				// Have we seen this document before?
-				if (fromdoc == null) {
-					// This is a previously unseen doc, so add it to the table.
-					fromdoc = fileIndex++;
-					docNumber.put(title, fromdoc);
-					docName[fromdoc] = title;
-				}
-				// Check all outlinks.
-				StringTokenizer tok = new StringTokenizer(line.substring(index + 1), ",");
-				while (tok.hasMoreTokens() && fileIndex < MAX_NUMBER_OF_DOCS) {
-					String otherTitle = tok.nextToken();
-					Integer otherDoc = docNumber.get(otherTitle);
-					if (otherDoc == null) {
-						// This is a previousy unseen doc, so add it to the table.
-						otherDoc = fileIndex++;
-						docNumber.put(otherTitle, otherDoc);
-						docName[otherDoc] = otherTitle;
-					}
-					// Set the probability to 0 for now, to indicate that there is
-					// a link from fromdoc to otherDoc.
-					if (link.get(fromdoc) == null) {
-						link.put(fromdoc, new HashMap<Integer, Boolean>());
-					}
-					if (link.get(fromdoc).get(otherDoc) == null) {
-						link.get(fromdoc).put(otherDoc, true);
-						out[fromdoc]++;
-					}
-				}
-			}
-			if (fileIndex >= MAX_NUMBER_OF_DOCS) {
-				System.err.print("stopped reading since documents table is full. ");
-			} else {
-				System.err.print("done. ");
-			}
+			graph = LinkGraph.read(linksFilename, docNumber);
+			System.err.print("done. ");
 		} catch (FileNotFoundException e) {
 			System.err.println("File " + linksFilename + " not found!");
+			graph = LinkGraph.fromEdges(0, new int[0], new int[0], 0);
 		} catch (IOException e) {
 			System.err.println("Error reading file " + linksFilename);
+			graph = LinkGraph.fromEdges(docNumber.size(), new int[0], new int[0], 0);
 		}
-		System.err.println("Read " + fileIndex + " number of documents");
-		return fileIndex;
+		System.err.println("Read " + graph.numNodes() + " number of documents");
+		return graph.numNodes();
 	}
 
 	/* --------------------------------------------- */
 
+	/**
+	 * Computes a with the selected solver.
+	 */
+	void solve(int numberOfDocs, int maxIterations) {
+		switch (solver) {
+			case GAUSS_SEIDEL:
+				iterateGaussSeidel(numberOfDocs, maxIterations);
+				break;
+			case EXTRAPOLATION:
+				iterateExtrapolated(numberOfDocs, maxIterations);
+				break;
+			case MONTE_CARLO:
+				iterateMonteCarlo(MonteCarloPageRank.Method.MC4, WALKS_PER_NODE * (long) numberOfDocs, 30);
+				break;
+			default:
+				if (workers > 1) {
+					iterateDistributed(maxIterations, workers);
+				} else if (parallelism > 1) {
+					iterateParallel(numberOfDocs, maxIterations, parallelism);
+				} else {
+					iterate(numberOfDocs, maxIterations);
+				}
+		}
+	}
+
+	/**
+	 * Returns the vector to start iterating from: the saved vector if
+	 * warm starting and there is one, otherwise all probability in doc 0.
+	 */
+	double[] startVector(int numberOfDocs) {
+		double[] start = warmStart ? readSavedVector(numberOfDocs) : null;
+		if (start == null) {
+			start = new double[numberOfDocs];
+			start[0] = 1; // initial prob
+		}
+		return start;
+	}
+
+	/**
+	 * Reads the vector in outputFilename and maps it to the current node
+	 * numbers by name. Nodes that are not in the file get the average
+	 * probability.
+	 *
+	 * @return the vector, or null if there is no saved vector.
+	 */
+	private double[] readSavedVector(int numberOfDocs) {
+		StaticScoreFile saved;
+		try {
+			saved = StaticScoreFile.open(outputFilename);
+		} catch (IOException e) {
+			System.err.println("No saved PageRank to start from in " + outputFilename);
+			return null;
+		}
+		double[] start = new double[numberOfDocs];
+		Arrays.fill(start, 1.0 / numberOfDocs);
+		saved.names((name, savedNode) -> {
+			int node = docNumber.get(name);
+			if (node >= 0 && node < numberOfDocs) {
+				start[node] = saved.score(0, savedNode);
+			}
+		});
+		return normalize(start);
+	}
+
+	/**
+	 * Prints the progress of an iteration: the L1 distance to the previous
+	 * vector and the time since the start.
+	 */
+	private void report(int counter, double diff, long startNanos) {
+		System.out.printf("Iteration: %d Diff: %.3e Time: %.1f ms%n", counter, diff, (System.nanoTime() - startNanos) / 1e6);
+	}
+
 	/*
 	 * Chooses a probability vector a, and repeatedly computes
 	 * aP, aP^2, aP^3... until aP^i = aP^(i+1).
 	 */
 	void iterate(int numberOfDocs, int maxIterations) {
-
-		// YOUR CODE HERE
-		a = new double[numberOfDocs];
+		long startNanos = System.nanoTime();
+		a = normalize(startVector(numberOfDocs));
 		double[] aNext = new double[numberOfDocs];
 
 		double diff = 99;
 		int counter = 0;
 
-		// System.out.println(link.get(docNumber.get("5")).get(docNumber.get("1")));
-
-		a[0] = 1; // initial prob
 		while (diff > EPSILON && maxIterations > counter) {
-			if (counter % 10 == 0) {
-				System.out.println("Iteration: " + counter + " Diff: " + diff);
+			diff = step(a, aNext);
+
+			double[] tmp = a;
+			a = aNext;
+			aNext = tmp;
+
+			counter++;
+			report(counter, diff, startNanos);
+		}
+
+		iterations = counter;
+		System.out.println("Iterations: " + counter);
+		System.out.println("Diff: " + diff);
+
+		// printTop30();
+	}
+
+	/**
+	 * One power iteration from a to aNext. Returns the L1 distance between
+	 * them.
+	 *
+	 * Only the links are pushed along the graph. The random jumps and the
+	 * jumps from nodes without outlinks reach every node with the same
+	 * probability, so they are added as one scalar, which makes an
+	 * iteration O(links) instead of O(docs^2).
+	 */
+	private double step(double[] a, double[] aNext) {
+		int numberOfDocs = a.length;
+		Arrays.fill(aNext, 0.0);
+
+		double dangling = graph instanceof LinkGraph ? push((LinkGraph) graph, a, aNext) : push(graph, a, aNext);
+
+		// bored surfers jump from linked docs, all surfers jump from dead ends
+		double jump = (BORED * (1 - dangling) + dangling) / numberOfDocs;
+		for (int j = 0; j < numberOfDocs; j++) {
+			aNext[j] += jump;
+		}
+
+		normalize(aNext);
+		return man_diff(a, aNext);
+	}
+
+	/**
+	 * Adds the probability each node sends along its outlinks to aNext,
+	 * reading the CSR arrays directly. Returns the probability held by
+	 * the dead ends.
+	 */
+	private double push(LinkGraph graph, double[] a, double[] aNext) {
+		int[] offsets = graph.offsets;
+		int[] targets = graph.targets;
+		double dangling = 0.0;
+		for (int i = 0; i < a.length; i++) { // rows (document from)
+			int start = offsets[i], end = offsets[i + 1];
+			if (start == end) {
+				dangling += a[i];
+				continue;
+			}
+			double share = (1 - BORED) * a[i] / (end - start);
+			for (int k = start; k < end; k++) {
+				aNext[targets[k]] += share;
 			}
+		}
+		return dangling;
+	}
 
-			diff = 0.0;
-			a = normalize(a);
-			for (int i = 0; i < numberOfDocs; i++) {
-				aNext[i] = 0.0;
+	/**
+	 * Same as push(LinkGraph, ...), for any graph: the outlinks of each
+	 * node are decoded into a buffer.
+	 */
+	private double push(Graph graph, double[] a, double[] aNext) {
+		int[] targets = new int[16];
+		double dangling = 0.0;
+		for (int i = 0; i < a.length; i++) { // rows (document from)
+			int out = graph.outDegree(i);
+			if (out == 0) {
+				dangling += a[i];
+				continue;
+			}
+			if (targets.length < out) {
+				targets = new int[2 * out];
+			}
+			graph.successors(i, targets);
+			double share = (1 - BORED) * a[i] / out;
+			for (int k = 0; k < out; k++) {
+				aNext[targets[k]] += share;
 			}
+		}
+		return dangling;
+	}
 
-			for (int i = 0; i < numberOfDocs; i++) { // rows (document from)
-				// if document has no outgoing links
-				if (out[i] == 0 || link.get(i) == null) {
-					for (int j = 0; j < numberOfDocs; j++) {
-						aNext[j] += a[i] * 1 / numberOfDocs;
-						// System.out.println(aNext[j] + " " + a[i]);
-					}
-					continue;
-				}
+	/*
+	 * Gauss-Seidel sweeps: each node pulls from its in-links, and uses
+	 * the values already updated in this sweep, so that new probability
+	 * spreads faster than in the power iteration. The dead-end mass is
+	 * kept up to date as the nodes change.
+	 */
+	void iterateGaussSeidel(int numberOfDocs, int maxIterations) {
+		if (inGraph == null) {
+			inGraph = graph.transpose();
+		}
+		long startNanos = System.nanoTime();
+		int[] sources = new int[16];
+		a = normalize(startVector(numberOfDocs));
+		double[] previous = new double[numberOfDocs];
+		// 1 / outlink count of each node, 0 for dead ends
+		double[] invOut = new double[numberOfDocs];
+		for (int i = 0; i < numberOfDocs; i++) {
+			int out = graph.outDegree(i);
+			invOut[i] = out == 0 ? 0 : 1.0 / out;
+		}
+
+		double diff = 99;
+		int counter = 0;
 
-				for (int j : link.get(i).keySet()) {
-					double Gval = ((1 - BORED) / out[i]) + (BORED / numberOfDocs);
-					aNext[j] += a[i] * Gval;
+		while (diff > EPSILON && maxIterations > counter) {
+			System.arraycopy(a, 0, previous, 0, numberOfDocs);
+			double total = 1.0;
+			double dangling = 0.0;
+			for (int i = 0; i < numberOfDocs; i++) {
+				if (invOut[i] == 0) {
+					dangling += a[i];
+				}
+			}
+			for (int j = 0; j < numberOfDocs; j++) {
+				double sum = 0;
+				int in = inGraph.outDegree(j);
+				if (sources.length < in) {
+					sources = new int[2 * in];
+				}
+				inGraph.successors(j, sources);
+				for (int k = 0; k < in; k++) {
+					int i = sources[k];
+					sum += a[i] * invOut[i];
 				}
+				double value = (BORED * (total - dangling) + dangling) / numberOfDocs + (1 - BORED) * sum;
+				total += value - a[j];
+				if (invOut[j] == 0) {
+					dangling += value - a[j];
+				}
+				a[j] = value;
+			}
+			normalize(a);
+			diff = man_diff(previous, a);
+			counter++;
+			report(counter, diff, startNanos);
+		}
 
-				for (int j = 0; j < numberOfDocs; j++) {
-					if (link.get(i).get(j) == null) {
-						aNext[j] += a[i] * (BORED / numberOfDocs);
-					}
+		iterations = counter;
+		System.out.println("Iterations: " + counter);
+		System.out.println("Diff: " + diff);
+	}
+
+	/*
+	 * Power iteration where every EXTRAPOLATION_PERIOD iterations the
+	 * last four vectors are used to estimate and remove the two
+	 * slowest-converging eigenvector components (quadratic extrapolation,
+	 * Kamvar et al. 2003).
+	 */
+	void iterateExtrapolated(int numberOfDocs, int maxIterations) {
+		long startNanos = System.nanoTime();
+		a = normalize(startVector(numberOfDocs));
+		double[] aNext = new double[numberOfDocs];
+		// the three vectors before a, oldest first
+		double[][] history = new double[3][];
+
+		double diff = 99;
+		int counter = 0;
+
+		while (diff > EPSILON && maxIterations > counter) {
+			int phase = counter % EXTRAPOLATION_PERIOD;
+			if (phase >= EXTRAPOLATION_PERIOD - 3) {
+				int h = phase - (EXTRAPOLATION_PERIOD - 3);
+				if (history[h] == null) {
+					history[h] = new double[numberOfDocs];
 				}
+				System.arraycopy(a, 0, history[h], 0, numberOfDocs);
 			}
+			diff = step(a, aNext);
 
-			normalize(aNext);
-			diff = man_diff(a, aNext);
+			double[] tmp = a;
+			a = aNext;
+			aNext = tmp;
 
-			for (int i = 0; i < numberOfDocs; i++) {
-				a[i] = aNext[i];
+			counter++;
+			if (counter % EXTRAPOLATION_PERIOD == 0 && diff > EPSILON) {
+				extrapolate(history[0], history[1], history[2], a);
+			}
+			report(counter, diff, startNanos);
+		}
+
+		iterations = counter;
+		System.out.println("Iterations: " + counter);
+		System.out.println("Diff: " + diff);
+	}
+
+	/**
+	 * Replaces x3 with the quadratic extrapolation of the four successive
+	 * vectors x0, x1, x2, x3.
+	 */
+	private void extrapolate(double[] x0, double[] x1, double[] x2, double[] x3) {
+		// least squares fit of y3 = -(g1 y1 + g2 y2), with yi = xi - x0
+		double s11 = 0, s12 = 0, s22 = 0, s13 = 0, s23 = 0;
+		for (int i = 0; i < x0.length; i++) {
+			double y1 = x1[i] - x0[i], y2 = x2[i] - x0[i], y3 = x3[i] - x0[i];
+			s11 += y1 * y1;
+			s12 += y1 * y2;
+			s22 += y2 * y2;
+			s13 += y1 * y3;
+			s23 += y2 * y3;
+		}
+		double det = s11 * s22 - s12 * s12;
+		if (Math.abs(det) < 1e-300) {
+			return;
+		}
+		double g1 = -(s22 * s13 - s12 * s23) / det;
+		double g2 = -(s11 * s23 - s12 * s13) / det;
+		double b0 = g1 + g2 + 1, b1 = g2 + 1, b2 = 1;
+		for (int i = 0; i < x3.length; i++) {
+			x3[i] = Math.max(0, b0 * x1[i] + b1 * x2[i] + b2 * x3[i]);
+		}
+		normalize(x3);
+	}
+
+	/*
+	 * Same iteration as iterate(), but every node pulls its new
+	 * probability from its in-links, so that the nodes can be split in
+	 * blocks over threads with no two threads writing the same slot.
+	 * The dead-end mass and the convergence check are parallel sums.
+	 */
+	void iterateParallel(int numberOfDocs, int maxIterations, int threads) {
+		if (inGraph == null) {
+			inGraph = graph.transpose();
+		}
+		double[] aNext = new double[numberOfDocs];
+		// probability sent along each outlink of a node, 0 for dead ends
+		double[] share = new double[numberOfDocs];
+		int blocks = (numberOfDocs + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+		double diff = 99;
+		int counter = 0;
+
+		long startNanos = System.nanoTime();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			a = normalize(startVector(numberOfDocs));
+			while (diff > EPSILON && maxIterations > counter) {
+				final double[] cur = a;
+				final double[] next = aNext;
+
+				double dangling = pool.submit(() -> IntStream.range(0, blocks).parallel()
+						.mapToDouble(b -> spreadBlock(b, cur, share)).sum()).get();
+				double jump = (BORED * (1 - dangling) + dangling) / numberOfDocs;
+				diff = pool.submit(() -> IntStream.range(0, blocks).parallel()
+						.mapToDouble(b -> pullBlock(b, cur, next, share, jump)).sum()).get();
+
+				a = next;
+				aNext = cur;
+				counter++;
+				report(counter, diff, startNanos);
 			}
+		} catch (InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+		} finally {
+			pool.shutdown();
+		}
+
+		iterations = counter;
+		System.out.println("Iterations: " + counter);
+		System.out.println("Diff: " + diff);
+	}
+
+	/*
+	 * Computes one personalized PageRank per teleport set in a single
+	 * pass over the links per iteration: the topics of a node are stored
+	 * next to each other, so each link moves all of them at once. Stops
+	 * when no topic moves more than EPSILON.
+	 *
+	 * @return the vectors, with topic t of node i at i * seeds.length + t.
+	 */
+	double[] iterateTopics(int[][] seeds, int maxIterations) {
+		long startNanos = System.nanoTime();
+		int k = seeds.length;
+		int numberOfDocs = graph.numNodes();
+		double[] x = new double[numberOfDocs * k];
+		double[] xNext = new double[numberOfDocs * k];
+		for (int t = 0; t < k; t++) {
+			for (int node : seeds[t]) {
+				x[node * k + t] = 1.0 / seeds[t].length;
+			}
+		}
+		int[] targets = new int[16];
+		double[] dangling = new double[k];
+		double[] diffs = new double[k];
 
+		double diff = 99;
+		int counter = 0;
+
+		while (diff > EPSILON && maxIterations > counter) {
+			Arrays.fill(xNext, 0.0);
+			Arrays.fill(dangling, 0.0);
+			for (int i = 0; i < numberOfDocs; i++) {
+				int out = graph.outDegree(i);
+				if (out == 0) {
+					for (int t = 0; t < k; t++) {
+						dangling[t] += x[i * k + t];
+					}
+					continue;
+				}
+				if (targets.length < out) {
+					targets = new int[2 * out];
+				}
+				graph.successors(i, targets);
+				double share = (1 - BORED) / out;
+				for (int j = 0; j < out; j++) {
+					int to = targets[j] * k;
+					for (int t = 0; t < k; t++) {
+						xNext[to + t] += share * x[i * k + t];
+					}
+				}
+			}
+			// the jumps of each topic land on its own pages
+			for (int t = 0; t < k; t++) {
+				double jump = (BORED * (1 - dangling[t]) + dangling[t]) / seeds[t].length;
+				for (int node : seeds[t]) {
+					xNext[node * k + t] += jump;
+				}
+			}
+			Arrays.fill(diffs, 0.0);
+			for (int i = 0; i < x.length; i++) {
+				diffs[i % k] += Math.abs(xNext[i] - x[i]);
+			}
+			diff = 0;
+			for (double d : diffs) {
+				diff = Math.max(diff, d);
+			}
+			double[] tmp = x;
+			x = xNext;
+			xNext = tmp;
 			counter++;
+			report(counter, diff, startNanos);
 		}
 
+		iterations = counter;
 		System.out.println("Iterations: " + counter);
 		System.out.println("Diff: " + diff);
+		return x;
+	}
 
-		// printTop30();
+	/*
+	 * Runs the power iteration in worker processes, each holding the links
+	 * of a range of nodes.
+	 */
+	void iterateDistributed(int maxIterations, int workers) {
+		DistributedPageRank distributed = new DistributedPageRank(LinkGraph.of(graph), workers, BORED);
+		try {
+			a = distributed.run(EPSILON, maxIterations);
+			iterations = distributed.iterations;
+			System.out.printf("%d workers: %.1f ms, %.1f KB per iteration, %.1f KB to set up%n", workers, distributed.iterationMs,
+					distributed.iterationBytes / 1e3 / Math.max(1, distributed.iterations), distributed.setupBytes / 1e3);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/*
+	 * Estimates a by random walks over parallelism threads. If topK is
+	 * positive, the walks stop once the top k are stable.
+	 */
+	void iterateMonteCarlo(MonteCarloPageRank.Method method, long walks, int topK) {
+		long startNanos = System.nanoTime();
+		MonteCarloPageRank mc = new MonteCarloPageRank(LinkGraph.of(graph), BORED, parallelism);
+		a = mc.run(method, walks, topK);
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+		iterations = 0;
+		System.out.printf("%s: %d walks, %d steps in %.1f ms (%.1f M steps/s)%n", method, mc.walks, mc.steps, seconds * 1000, mc.steps / seconds / 1e6);
+	}
+
+	/**
+	 * Computes the share of each node in block b, and returns the
+	 * probability held by the dead ends of the block.
+	 */
+	private double spreadBlock(int b, double[] a, double[] share) {
+		int end = Math.min(a.length, (b + 1) * BLOCK_SIZE);
+		double dangling = 0;
+		for (int i = b * BLOCK_SIZE; i < end; i++) {
+			int out = graph.outDegree(i);
+			if (out == 0) {
+				dangling += a[i];
+				share[i] = 0;
+			} else {
+				share[i] = (1 - BORED) * a[i] / out;
+			}
+		}
+		return dangling;
+	}
+
+	/**
+	 * Computes the new probability of each node in block b from its
+	 * in-links, and returns the Manhattan distance moved by the block.
+	 */
+	private double pullBlock(int b, double[] a, double[] aNext, double[] share, double jump) {
+		int end = Math.min(a.length, (b + 1) * BLOCK_SIZE);
+		double diff = 0;
+		if (inGraph instanceof LinkGraph) {
+			int[] offsets = ((LinkGraph) inGraph).offsets;
+			int[] sources = ((LinkGraph) inGraph).targets;
+			for (int j = b * BLOCK_SIZE; j < end; j++) {
+				double sum = jump;
+				for (int k = offsets[j]; k < offsets[j + 1]; k++) {
+					sum += share[sources[k]];
+				}
+				aNext[j] = sum;
+				diff += Math.abs(sum - a[j]);
+			}
+			return diff;
+		}
+		int[] sources = new int[16];
+		for (int j = b * BLOCK_SIZE; j < end; j++) {
+			double sum = jump;
+			int in = inGraph.outDegree(j);
+			if (sources.length < in) {
+				sources = new int[2 * in];
+			}
+			inGraph.successors(j, sources);
+			for (int k = 0; k < in; k++) {
+				sum += share[sources[k]];
+			}
+			aNext[j] = sum;
+			diff += Math.abs(sum - a[j]);
+		}
+		return diff;
 	}
 
 	private double man_diff(double[] a, double[] aNext) {
@@ -320,15 +1078,81 @@ public class PageRank {
 		System.out.println("Top 30 documents:");
 		for (int i = 0; i < 30; i++) {
 			if (top30Val[i] > -1) { // Ensure valid values are printed
-				System.out.println(docName[top30[i]] + ": " + top30Val[i]);
+				System.out.println(docNumber.name(top30[i]) + ": " + top30Val[i]);
 			}
 		}
 	}
 
 	public double getScore(String docName) {
 		int index1 = docFileNumber.get(docName);
-		int index2 = docNumber.get(Integer.toString(index1));
-		return a[index2];
+		int index2 = scores.node(Integer.toString(index1));
+		return index2 < 0 ? 0 : scores.score(0, index2);
+	}
+
+	/**
+	 * Joins the PageRank vector to the docIDs of the indexer: the file name
+	 * of each document is looked up in the titles file, and its node in the
+	 * link graph. Documents without a node get 0.
+	 *
+	 * @return the PageRank of each docID.
+	 */
+	public float[] docScores(Map<Integer, String> docNames) {
+		float[] docScores = new float[docNames.size()];
+		if (scores == null) {
+			System.err.println("No PageRank computed, all documents get 0");
+			return docScores;
+		}
+		int missing = 0;
+		for (Map.Entry<Integer, String> e : docNames.entrySet()) {
+			Integer node = docFileNumber.get(new File(e.getValue()).getName());
+			int index = node == null ? -1 : scores.node(Integer.toString(node));
+			if (index < 0 || e.getKey() >= docScores.length) {
+				missing++;
+				continue;
+			}
+			docScores[e.getKey()] = scores.score(0, index);
+		}
+		System.err.println("Joined PageRank to " + (docNames.size() - missing) + " documents");
+		return docScores;
+	}
+
+	/**
+	 * Joins the topic vectors to the docIDs like docScores(), with the
+	 * topics of a document next to each other: the score of topic t for
+	 * docID d is at d * numTopics() + t.
+	 */
+	public float[] docTopicScores(Map<Integer, String> docNames) {
+		int k = numTopics();
+		float[] docScores = new float[docNames.size() * k];
+		for (Map.Entry<Integer, String> e : docNames.entrySet()) {
+			Integer node = docFileNumber.get(new File(e.getValue()).getName());
+			int index = node == null ? -1 : topicScores.node(Integer.toString(node));
+			if (index < 0 || e.getKey() >= docNames.size()) {
+				continue;
+			}
+			for (int t = 0; t < k; t++) {
+				docScores[e.getKey() * k + t] = topicScores.score(t, index);
+			}
+		}
+		return docScores;
+	}
+
+	/**
+	 * Returns the docIDs of the pages of each saved topic, sorted.
+	 */
+	public int[][] topicSeedDocs(Map<Integer, String> docNames) {
+		HashMap<String, Integer> docID = new HashMap<String, Integer>();
+		for (Map.Entry<Integer, String> e : docNames.entrySet()) {
+			docID.put(new File(e.getValue()).getName(), e.getKey());
+		}
+		LinkedHashMap<String, List<String>> seeds = readTopicSeeds();
+		int[][] docs = new int[numTopics()][];
+		for (int t = 0; t < docs.length; t++) {
+			List<String> titles = seeds.getOrDefault(topicScores.labels[t], Collections.emptyList());
+			docs[t] = titles.stream().map(docID::get).filter(Objects::nonNull)
+					.mapToInt(Integer::intValue).sorted().distinct().toArray();
+		}
+		return docs;
 	}
 
 	/* --------------------------------------------- */
@@ -0,0 +1,314 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Times the sequential and the parallel PageRank iteration on the links
+ * file and on a synthetic graph, from 1 thread up to the number of cores,
+ * compares the solvers and the Monte Carlo estimators, and measures the
+ * cost of the compressed graph, the gain of incremental updates, the
+ * cost of iterating out of core and the scaling over worker processes.
+ *
+ * Usage: PageRankBenchmark [-n nodes] [-d out-degree] [-t max threads]
+ */
+public class PageRankBenchmark {
+
+    /** Number of timed runs per configuration; the fastest one is reported. */
+    final static int RUNS = 3;
+
+    /**
+     * Builds a random graph where the targets are skewed towards low node
+     * numbers, so that some nodes get many more in-links than others.
+     * About one node in ten has no outlinks.
+     */
+    static LinkGraph syntheticGraph(int numNodes, int outDegree, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int numEdges = numNodes * outDegree;
+        int[] from = new int[numEdges];
+        int[] to = new int[numEdges];
+        int e = 0;
+        for (int i = 0; i < numNodes; i++) {
+            if (random.nextInt(10) == 0) {
+                continue;
+            }
+            int degree = 1 + random.nextInt(2 * outDegree - 1);
+            for (int k = 0; k < degree && e < numEdges; k++) {
+                double r = random.nextDouble();
+                from[e] = i;
+                to[e] = (int) (r * r * numNodes);
+                e++;
+            }
+        }
+        return LinkGraph.fromEdges(numNodes, from, to, e);
+    }
+
+    /** Returns the best time in ms of RUNS computations. */
+    static double time(PageRank pr, int threads) {
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        double best = Double.MAX_VALUE;
+        try {
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                if (threads == 0) {
+                    pr.iterate(pr.graph.numNodes(), 1000);
+                } else {
+                    pr.iterateParallel(pr.graph.numNodes(), 1000, threads);
+                }
+                best = Math.min(best, (System.nanoTime() - start) / 1e6);
+            }
+        } finally {
+            System.setOut(stdout);
+        }
+        return best;
+    }
+
+    static void benchmark(String name, LinkGraph graph, int maxThreads) {
+        System.out.println(name + ": " + graph.numNodes + " nodes, " + graph.numEdges() + " links");
+        PageRank pr = new PageRank(graph);
+        double sequential = time(pr, 0);
+        System.out.printf("  %-10s %10.1f ms%n", "sequential", sequential);
+        // 1, 2, 4, ... threads, and the maximum
+        for (int threads = 1; threads <= maxThreads; threads = threads == maxThreads ? threads + 1 : Math.min(2 * threads, maxThreads)) {
+            double ms = time(pr, threads);
+            System.out.printf("  %2d threads %10.1f ms  speedup %.2f%n", threads, ms, sequential / ms);
+        }
+    }
+
+    /** Returns the nodes with the k highest values of a. */
+    static Set<Integer> top(double[] a, int k) {
+        PriorityQueue<Integer> heap = new PriorityQueue<Integer>((x, y) -> Double.compare(a[x], a[y]));
+        for (int i = 0; i < a.length; i++) {
+            heap.add(i);
+            if (heap.size() > k) {
+                heap.poll();
+            }
+        }
+        return new HashSet<Integer>(heap);
+    }
+
+    /**
+     * Runs every solver once and prints its iterations, time and how many
+     * of the Jacobi top 30 it agrees on.
+     */
+    static void compareSolvers(String name, LinkGraph graph) {
+        System.out.println(name + ": solvers");
+        PageRank pr = new PageRank(graph);
+        Set<Integer> reference = null;
+        PrintStream stdout = System.out;
+        for (PageRank.Solver solver : PageRank.Solver.values()) {
+            pr.setSolver(solver);
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            long start = System.nanoTime();
+            try {
+                pr.solve(graph.numNodes, 1000);
+            } finally {
+                System.setOut(stdout);
+            }
+            double ms = (System.nanoTime() - start) / 1e6;
+            Set<Integer> top = top(pr.a, 30);
+            if (reference == null) {
+                reference = top;
+            }
+            top.retainAll(reference);
+            System.out.printf("  %-13s %4d iterations %10.1f ms  top-30 agreement %d/30%n", solver, pr.iterations, ms, top.size());
+        }
+    }
+
+    /**
+     * Runs each Monte Carlo method with m walks per node on 1 .. maxThreads
+     * threads, and prints the walk throughput and the top-30 agreement
+     * with the power iteration.
+     */
+    static void monteCarlo(String name, LinkGraph graph, int m, int maxThreads) {
+        System.out.println(name + ": Monte Carlo, " + m + " walks per node");
+        PageRank pr = new PageRank(graph);
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            pr.iterate(graph.numNodes, 1000);
+        } finally {
+            System.setOut(stdout);
+        }
+        Set<Integer> reference = top(pr.a, 30);
+        for (MonteCarloPageRank.Method method : MonteCarloPageRank.Method.values()) {
+            for (int threads = 1; threads <= maxThreads; threads = threads == maxThreads ? threads + 1 : Math.min(2 * threads, maxThreads)) {
+                MonteCarloPageRank mc = new MonteCarloPageRank(graph, PageRank.BORED, threads);
+                long start = System.nanoTime();
+                double[] rank = mc.run(method, (long) m * graph.numNodes, 0);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                Set<Integer> top = top(rank, 30);
+                top.retainAll(reference);
+                System.out.printf("  %s %2d threads %10.1f ms %8.1f M steps/s  top-30 agreement %d/30%n",
+                                  method, threads, seconds * 1000, mc.steps / seconds / 1e6, top.size());
+            }
+        }
+    }
+
+    /**
+     * Prints the size of the gap compressed graph, and the time of the
+     * power iteration on it and on the uncompressed graph.
+     */
+    static void compression(String name, LinkGraph graph) {
+        CompressedGraph compressed = CompressedGraph.compress(graph);
+        System.out.printf("%s: compressed %.2f bits per link + %.2f for the index, CSR %.2f + %.2f%n", name,
+                          compressed.bitsPerEdge(), compressed.indexBitsPerEdge(),
+                          32.0, 32.0 * (graph.numNodes + 1) / Math.max(1, graph.numEdges()));
+        double csr = time(new PageRank(graph), 0);
+        double gaps = time(new PageRank(compressed), 0);
+        System.out.printf("  CSR %10.1f ms  compressed %10.1f ms  overhead %.0f%%%n", csr, gaps, 100 * (gaps / csr - 1));
+    }
+
+    /**
+     * Adds random links to the graph, and compares updating the PageRank
+     * incrementally with recomputing it.
+     */
+    static void incremental(String name, LinkGraph graph, int changes) {
+        System.out.println(name + ": incremental update of " + changes + " added links");
+        PageRank pr = new PageRank(graph);
+        time(pr, 0);
+        // the first round also pays for compiling the code
+        for (int round = 0; round < 3; round++) {
+            IncrementalPageRank inc = new IncrementalPageRank(graph, pr.a, PageRank.BORED, PageRank.EPSILON);
+            SplittableRandom random = new SplittableRandom(round);
+            long start = System.nanoTime();
+            for (int c = 0; c < changes; c++) {
+                int from = random.nextInt(graph.numNodes);
+                int[] before = inc.successors(from);
+                int[] after = Arrays.copyOf(before, before.length + 1);
+                after[before.length] = random.nextInt(graph.numNodes);
+                inc.setSuccessors(from, after);
+            }
+            inc.push();
+            double incMs = (System.nanoTime() - start) / 1e6;
+            double[] updated = inc.scores();
+
+            PageRank full = new PageRank(LinkGraph.of(inc.graph()));
+            double fullMs = time(full, 0);
+            double diff = 0;
+            for (int i = 0; i < updated.length; i++) {
+                diff += Math.abs(updated[i] - full.a[i]);
+            }
+            Set<Integer> top = top(updated, 30);
+            top.retainAll(top(full.a, 30));
+            System.out.printf("  incremental %8.2f ms (%d pushes on %d nodes)  full %8.1f ms  L1 difference %.2e  top-30 agreement %d/30%n",
+                              incMs, inc.pushes, inc.touched, fullMs, diff, top.size());
+        }
+    }
+
+    /**
+     * Compares the out-of-core block iteration with the in-memory one, for
+     * a few block sizes.
+     */
+    static void outOfCore(String name, LinkGraph graph) {
+        System.out.println(name + ": out of core");
+        PageRank pr = new PageRank(graph);
+        double inMemory = time(pr, 0);
+        System.out.printf("  %-16s %10.1f ms%n", "in memory", inMemory);
+        File dir = new File(System.getProperty("java.io.tmpdir"), "pagerank-blocks");
+        PrintStream stdout = System.out;
+        for (int blocks : new int[] { 1, 4, 16 }) {
+            int blockSize = (graph.numNodes + blocks - 1) / blocks;
+            try {
+                BlockPageRank bpr = BlockPageRank.partition(graph, dir, blockSize);
+                double best = Double.MAX_VALUE;
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                try {
+                    for (int run = 0; run < RUNS; run++) {
+                        long start = System.nanoTime();
+                        bpr.iterate(PageRank.BORED, PageRank.EPSILON, 1000);
+                        best = Math.min(best, (System.nanoTime() - start) / 1e6);
+                    }
+                } finally {
+                    System.setOut(stdout);
+                }
+                double[] a = bpr.scores();
+                double diff = 0;
+                for (int i = 0; i < a.length; i++) {
+                    diff += Math.abs(a[i] - pr.a[i]);
+                }
+                System.out.printf("  %2d blocks        %10.1f ms  %.1f MB partitions  L1 difference %.2e%n",
+                                  bpr.numBlocks, best, bpr.partitionBytes() / 1e6, diff);
+                bpr.delete();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Runs the power iteration in 1 .. maxWorkers processes, and prints the
+     * speedup over the sequential iteration and the bytes exchanged.
+     */
+    static void distributed(String name, LinkGraph graph, int maxWorkers) {
+        System.out.println(name + ": worker processes");
+        PageRank pr = new PageRank(graph);
+        double sequential = time(pr, 0);
+        System.out.printf("  %-10s %10.1f ms%n", "sequential", sequential);
+        PrintStream stdout = System.out;
+        for (int workers = 1; workers <= maxWorkers; workers = workers == maxWorkers ? workers + 1 : Math.min(2 * workers, maxWorkers)) {
+            DistributedPageRank distributed = new DistributedPageRank(graph, workers, PageRank.BORED);
+            try {
+                long start = System.nanoTime();
+                double[] a;
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                try {
+                    a = distributed.run(PageRank.EPSILON, 1000);
+                } finally {
+                    System.setOut(stdout);
+                }
+                double total = (System.nanoTime() - start) / 1e6;
+                double diff = 0;
+                for (int i = 0; i < a.length; i++) {
+                    diff += Math.abs(a[i] - pr.a[i]);
+                }
+                System.out.printf("  %2d workers %10.1f ms (%.1f ms with start-up)  speedup %.2f  %.1f KB per iteration  L1 difference %.2e%n",
+                                  workers, distributed.iterationMs, total, sequential / distributed.iterationMs,
+                                  distributed.iterationBytes / 1e3 / Math.max(1, distributed.iterations), diff);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        int numNodes = 1000000;
+        int outDegree = 10;
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-n")) {
+                numNodes = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-d")) {
+                outDegree = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-t")) {
+                maxThreads = Integer.parseInt(args[++i]);
+            }
+        }
+        LinkGraph synthetic = syntheticGraph(numNodes, outDegree, 42);
+        if (new File("./data/linksDavis.txt").exists()) {
+            LinkGraph links = LinkGraph.of(new PageRank().graph());
+            benchmark("linksDavis", links, maxThreads);
+            compareSolvers("linksDavis", links);
+            compression("linksDavis", links);
+            incremental("linksDavis", links, 10);
+            monteCarlo("linksDavis", links, 100, maxThreads);
+            outOfCore("linksDavis", links);
+            distributed("linksDavis", links, Math.max(2, maxThreads));
+        }
+        benchmark("synthetic", synthetic, maxThreads);
+        compareSolvers("synthetic", synthetic);
+        compression("synthetic", synthetic);
+        incremental("synthetic", synthetic, 10);
+        monteCarlo("synthetic", synthetic, 10, maxThreads);
+        outOfCore("synthetic", synthetic);
+        distributed("synthetic", synthetic, Math.max(2, maxThreads));
+    }
+}
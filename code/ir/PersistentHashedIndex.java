@@ -9,6 +9,7 @@ package ir;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 
@@ -19,11 +20,26 @@ import java.util.*;
  *   stored in RandomAccessFiles that permit fast (almost constant-time)
  *   disk seeks. 
  *
+ *   The postings are split in two streams. The data file holds, for every
+ *   term, the docIDs (gap encoded) and term frequencies. The positions file
+ *   holds the offsets of each posting as plain ints, so that the offsets of
+ *   one document can be read on their own when a phrase query needs them.
+ *
+ *   The entry of a term in the data file is
+ *
+ *     token length, token, number of postings, number of skips,
+ *     skips, (docID gap, tf) VByte pairs
+ *
+ *   where skip k points to posting k * SKIP_INTERVAL and holds the docID
+ *   before it, its byte offset from the first posting and the number of
+ *   offsets in the positions file before it, as three ints. advance()
+ *   jumps through the skips instead of decoding every posting.
+ *
  *   When words are read and indexed, they are first put in an ordinary,
  *   main-memory HashMap. When all words are read, the index is committed
  *   to disk.
  */
-public class PersistentHashedIndex implements Index {
+public class PersistentHashedIndex implements Index, PositionsReader {
 
     /** The directory where the persistent index files are stored. */
     public static final String INDEXDIR = "./index";
@@ -34,21 +50,40 @@ public class PersistentHashedIndex implements Index {
     /** The data file name */
     public static final String DATA_FNAME = "data";
 
+    /** The positions file name */
+    public static final String POSITIONS_FNAME = "positions";
+
     /** The terms file name */
     public static final String TERMS_FNAME = "terms";
 
     /** The doc info file name */
     public static final String DOCINFO_FNAME = "docInfo";
 
+    /** Postings between two skips of a postings list. */
+    public static final int SKIP_INTERVAL = 128;
+
+    /** Bytes of one skip: docID before, byte offset and positions before. */
+    static final int SKIPSIZE = 3 * Integer.BYTES;
+
     /** The dictionary hash table on disk can fit this many entries. */
     public static final long TABLESIZE = 611953L;
 
+    /**
+     * Size of one dictionary entry: pointer into the data file, size of the
+     * data, pointer into the positions file, document frequency and
+     * collection frequency.
+     */
+    public static final int ENTRYSIZE = Long.BYTES * 5;
+
     /** The dictionary hash table is stored in this file. */
     RandomAccessFile dictionaryFile;
 
-    /** The data (the PostingsLists) are stored in this file. */
+    /** The data (the docIDs and frequencies) are stored in this file. */
     RandomAccessFile dataFile;
 
+    /** The offsets of the postings are stored in this file. */
+    RandomAccessFile positionsFile;
+
     /** Pointer to the first free memory cell in the data file. */
     long free = 0L;
 
@@ -65,48 +100,231 @@ public class PersistentHashedIndex implements Index {
     public class Entry {
         String token;
         long ptr;
-        String data;
+        long posPtr;
+        byte[] data;
         long byteSize;
+        int df;
+        long cf;
 
-        public Entry(String token, long ptr, String data) {
+        public Entry(String token, long ptr, long posPtr, byte[] data, int df, long cf) {
             this.token = token;
             this.ptr = ptr;
+            this.posPtr = posPtr;
             this.data = data;
-            this.byteSize = data.getBytes().length; // +1 for newline
+            this.byteSize = data.length;
+            this.df = df;
+            this.cf = cf;
         }
 
-        public PostingsList getPostingsList() {
-            String[] list = data.split("[;]"); // has [DocID, O1, ..., O2] , last becomes newline
-
-            // System.out.printf("Token: %s, length: %d\n", token, list.length - 2);
-            // System.out.printf("List: ");
-            // for (int i = 0; i < list.length - 1; i++) {
-            // System.out.printf("[%s] ", list[i]);
-            // }
-            // System.out.println();
+        /**
+         * An entry found in the dictionary whose data has not been read yet.
+         */
+        public Entry(String token, long ptr, long posPtr, long byteSize, int df, long cf) {
+            this.token = token;
+            this.ptr = ptr;
+            this.posPtr = posPtr;
+            this.byteSize = byteSize;
+            this.df = df;
+            this.cf = cf;
+        }
 
+        /**
+         * Decodes the docIDs and frequencies. The offsets are left in the
+         * positions file until someone asks for them.
+         */
+        public PostingsList getPostingsList() {
             PostingsList postings = new PostingsList();
 
-            if (list.length == 0 || ptr == -1 || list[0].equals("")) {
+            if (ptr == -1 || byteSize == 0) {
                 return postings;
             }
-            if (list[0].equals("rs")) {
-                System.err.println("List: " + list[0] + " token: " + token);
+            if (data == null) {
+                data = readData(ptr, (int) byteSize);
             }
 
-            int size = Integer.parseInt(list[0]); // number of postings
-            for (int i = 1; i <= size; i++) {
-                String[] doc = list[i].split("[:]");
-                int docID = Integer.parseInt(doc[0]); // docID
-                int offset = Integer.parseInt(doc[1]);
-                postings.add(docID, offset, 0);
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            buffer.position(Integer.BYTES + buffer.getInt()); // skip the token
+            int size = buffer.getInt(); // number of postings
+            int numSkips = buffer.getInt();
+            buffer.position(buffer.position() + numSkips * SKIPSIZE); // the skips are for iterators
+            int docID = 0;
+            long positions = posPtr;
+            for (int i = 0; i < size; i++) {
+                docID += VariableByte.read(buffer);
+                int freq = VariableByte.read(buffer);
+                postings.append(new PostingsEntry(docID, freq, positions, PersistentHashedIndex.this));
+                positions += (long) freq * Integer.BYTES;
+            }
+            return postings;
+        }
+    }
+
+    /**
+     * Streams the postings of one entry from the data file through a small
+     * buffer, so that memory use does not depend on the length of the list.
+     * The offsets of a document are read only if positions are asked for.
+     */
+    class DiskPostingsIterator extends PostingsIterator {
+
+        static final int BUFFERSIZE = 8192;
+
+        private final byte[] buffer = new byte[BUFFERSIZE];
+
+        /** Valid bytes in the buffer, and the next one to decode. */
+        private int limit = 0;
+        private int pos = 0;
+
+        /** Where the buffer will be refilled from. */
+        private long filePtr;
 
-                for (int j = 2; j < doc.length; j++) {
-                    offset = Integer.parseInt(doc[j]);
-                    postings.addOffsetToLast(offset);
+        /** Where the data of this entry ends. */
+        private final long end;
+
+        private final int size;
+        private int read = 0;
+
+        private int doc = -1;
+        private int freq = 0;
+
+        /** Where the skips and the postings of this entry start. */
+        private final long skipsPtr;
+        private final long postingsPtr;
+        private final int numSkips;
+
+        /** The skips, read when advance() first needs them. */
+        private int[] skips;
+
+        /** Positions pointer of the first posting. */
+        private final long firstPosPtr;
+
+        /** Positions pointer of the current and the next document. */
+        private long posPtr;
+        private long nextPosPtr;
+
+        private int[] positions;
+        private int nextPosition;
+
+        DiskPostingsIterator(Entry entry, int tokenLength) {
+            filePtr = entry.ptr + Integer.BYTES + tokenLength;
+            end = entry.ptr + entry.byteSize;
+            firstPosPtr = nextPosPtr = entry.posPtr;
+            size = readInt();
+            numSkips = readInt();
+            skipsPtr = entry.ptr + Integer.BYTES + tokenLength + 2 * Integer.BYTES;
+            postingsPtr = skipsPtr + (long) numSkips * SKIPSIZE;
+            seek(postingsPtr);
+        }
+
+        /** Makes the next byte read the one at ptr, keeping the buffer if it holds it. */
+        private void seek(long ptr) {
+            long bufferStart = filePtr - limit;
+            if (ptr >= bufferStart && ptr < filePtr) {
+                pos = (int) (ptr - bufferStart);
+            } else {
+                filePtr = ptr;
+                pos = limit = 0;
+            }
+        }
+
+        private int readByte() {
+            if (pos == limit) {
+                try {
+                    limit = (int) Math.min(BUFFERSIZE, end - filePtr);
+                    dataFile.seek(filePtr);
+                    dataFile.readFully(buffer, 0, limit);
+                    filePtr += limit;
+                    pos = 0;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return 0;
                 }
             }
-            return postings;
+            return buffer[pos++] & 0xFF;
+        }
+
+        private int readInt() {
+            return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        }
+
+        private int readVByte() {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = readByte();
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        public int docID() {
+            return doc;
+        }
+
+        public int nextDoc() {
+            if (read == size) {
+                return doc = NO_MORE_DOCS;
+            }
+            doc = Math.max(doc, 0) + readVByte();
+            freq = readVByte();
+            posPtr = nextPosPtr;
+            nextPosPtr += (long) freq * Integer.BYTES;
+            positions = null;
+            read++;
+            touched++;
+            return doc;
+        }
+
+        /**
+         * Jumps to the last skip ahead whose docID before is below target,
+         * and decodes linearly from there.
+         */
+        public int advance(int target) {
+            if (numSkips > 0) {
+                if (skips == null) {
+                    skips = new int[3 * numSkips];
+                    ByteBuffer table = ByteBuffer.wrap(readData(skipsPtr, numSkips * SKIPSIZE));
+                    for (int i = 0; i < skips.length; i++) {
+                        skips[i] = table.getInt();
+                    }
+                }
+                int lo = read / SKIP_INTERVAL;
+                int hi = numSkips;
+                // the last skip k > lo with skips[3 * (k - 1)] < target
+                while (lo < hi) {
+                    int mid = (lo + hi + 1) >>> 1;
+                    if (skips[3 * (mid - 1)] < target) {
+                        lo = mid;
+                    } else {
+                        hi = mid - 1;
+                    }
+                }
+                if (lo * SKIP_INTERVAL > read) {
+                    doc = skips[3 * (lo - 1)];
+                    seek(postingsPtr + skips[3 * (lo - 1) + 1]);
+                    nextPosPtr = firstPosPtr + (long) skips[3 * (lo - 1) + 2] * Integer.BYTES;
+                    read = lo * SKIP_INTERVAL;
+                    touched++;
+                }
+            }
+            return super.advance(target);
+        }
+
+        public int freq() {
+            return freq;
+        }
+
+        public int nextPosition() {
+            if (positions == null) {
+                positions = readPositionsArray(posPtr, freq);
+                nextPosition = 0;
+            }
+            return positions[nextPosition++];
+        }
+
+        public long cost() {
+            return size;
         }
     }
 
@@ -120,6 +338,7 @@ public class PersistentHashedIndex implements Index {
         try {
             dictionaryFile = new RandomAccessFile(INDEXDIR + "/" + DICTIONARY_FNAME, "rw");
             dataFile = new RandomAccessFile(INDEXDIR + "/" + DATA_FNAME, "rw");
+            positionsFile = new RandomAccessFile(INDEXDIR + "/" + POSITIONS_FNAME, "rw");
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -139,15 +358,14 @@ public class PersistentHashedIndex implements Index {
     }
 
     /**
-     * Writes data to the data file at a specified place.
+     * Writes data to a file at a specified place.
      *
      * @return The number of bytes written.
      */
-    int writeData(String dataString, long ptr) {
+    int writeData(RandomAccessFile file, byte[] data, long ptr) {
         try {
-            dataFile.seek(ptr);
-            byte[] data = dataString.getBytes();
-            dataFile.write(data);
+            file.seek(ptr);
+            file.write(data);
             return data.length;
         } catch (IOException e) {
             e.printStackTrace();
@@ -158,18 +376,95 @@ public class PersistentHashedIndex implements Index {
     /**
      * Reads data from the data file
      */
-    String readData(long ptr, int size) {
+    byte[] readData(long ptr, int size) {
         try {
             dataFile.seek(ptr);
             byte[] data = new byte[size];
             dataFile.readFully(data);
-            return new String(data);
+            return data;
         } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
     }
 
+    /**
+     * Reads the offsets of one posting from the positions file.
+     */
+    public ArrayList<Integer> readPositions(long ptr, int count) {
+        ArrayList<Integer> offsets = new ArrayList<Integer>(count);
+        for (int offset : readPositionsArray(ptr, count)) {
+            offsets.add(offset);
+        }
+        return offsets;
+    }
+
+    int[] readPositionsArray(long ptr, int count) {
+        int[] offsets = new int[count];
+        try {
+            byte[] data = new byte[count * Integer.BYTES];
+            positionsFile.seek(ptr);
+            positionsFile.readFully(data);
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            for (int i = 0; i < count; i++) {
+                offsets[i] = buffer.getInt();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return offsets;
+    }
+
+    /**
+     * Encodes the docIDs and frequencies of a postings list, preceded by
+     * the term itself so that hash collisions can be detected.
+     */
+    private byte[] encodeDocs(String token, PostingsList list) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] tokenBytes = token.getBytes(StandardCharsets.UTF_8);
+        out.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt(tokenBytes.length).array());
+        out.writeBytes(tokenBytes);
+        out.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt(list.size()).array());
+        int numSkips = (list.size() - 1) / SKIP_INTERVAL;
+        ByteBuffer skips = ByteBuffer.allocate(Integer.BYTES + numSkips * SKIPSIZE);
+        skips.putInt(numSkips);
+        ByteArrayOutputStream postings = new ByteArrayOutputStream();
+        int lastDocID = 0;
+        int positions = 0;
+        for (int i = 0; i < list.size(); i++) {
+            PostingsEntry e = list.get(i);
+            if (i > 0 && i % SKIP_INTERVAL == 0) {
+                skips.putInt(lastDocID);
+                skips.putInt(postings.size());
+                skips.putInt(positions);
+            }
+            VariableByte.write(postings, e.docID - lastDocID);
+            VariableByte.write(postings, e.getFrequency());
+            lastDocID = e.docID;
+            positions += e.getFrequency();
+        }
+        out.writeBytes(skips.array());
+        out.writeBytes(postings.toByteArray());
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes the offsets of a postings list, one posting after the other.
+     */
+    private byte[] encodePositions(PostingsList list) {
+        int count = 0;
+        for (int i = 0; i < list.size(); i++) {
+            count += list.get(i).getFrequency();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(count * Integer.BYTES);
+        for (int i = 0; i < list.size(); i++) {
+            for (int offset : list.get(i).getOffsets()) {
+                buffer.putInt(offset);
+            }
+        }
+        return buffer.array();
+    }
+
     // ==================================================================
     //
     // Reading and writing to the dictionary file.
@@ -184,31 +479,29 @@ public class PersistentHashedIndex implements Index {
     void writeEntry(Entry entry, long ptr) {
         try {
             dictionaryFile.seek(ptr);
-            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES * 2); // every byte 8 bytes
+            ByteBuffer buffer = ByteBuffer.allocate(ENTRYSIZE);
             buffer.putLong(entry.ptr);
             buffer.putLong(entry.byteSize);
+            buffer.putLong(entry.posPtr);
+            buffer.putLong(entry.df);
+            buffer.putLong(entry.cf);
             dictionaryFile.write(buffer.array());
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * An entry is taken if its size is non-zero (the first entry has data
+     * pointer 0, so the pointer itself can't be used for this).
+     */
     private boolean isEntryCollision(long ptr) {
         try {
-            dictionaryFile.seek(ptr);
-            byte[] dataptr = new byte[Long.BYTES];
-            int numberRead = dictionaryFile.read(dataptr);
-            if (numberRead == -1) {
+            if (ptr + ENTRYSIZE > dictionaryFile.length()) {
                 return false;
             }
-            // System.out.println("Collision at: " + ptr + " with value: " + dataptr[0]);
-            for (int i = 0; i < numberRead; i++) {
-                if (dataptr[i] != 0) {
-                    return true;
-                }
-            }
-            return false;
-
+            dictionaryFile.seek(ptr + Long.BYTES);
+            return dictionaryFile.readLong() != 0;
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -216,42 +509,44 @@ public class PersistentHashedIndex implements Index {
     }
 
     /**
-     * Reads an entry from the dictionary file.
+     * Reads an entry from the dictionary file. Only the term is read from
+     * the data file, to check for collisions; the postings are read later.
      *
      * @param ptr The place in the dictionary file where to start reading.
      */
     Entry readEntry(String token, long ptr) {
         try {
-            String data = "";
-            long entryptr = 0;
+            byte[] tokenBytes = token.getBytes(StandardCharsets.UTF_8);
             int counter = 1;
-            while (!data.startsWith(token + ";")) {
-                // System.out.println("Reading at: " + ptr);
+            while (true) {
+                if (ptr + ENTRYSIZE > dictionaryFile.length()) {
+                    return new Entry(token, -1, -1, 0, 0, 0);
+                }
                 dictionaryFile.seek(ptr);
-                byte[] dataptr = new byte[Long.BYTES];
-                byte[] datasize = new byte[Long.BYTES];
-                dictionaryFile.readFully(dataptr);
-                dictionaryFile.readFully(datasize);
+                long entryptr = dictionaryFile.readLong();
+                long size = dictionaryFile.readLong();
+                long posptr = dictionaryFile.readLong();
+                int df = (int) dictionaryFile.readLong();
+                long cf = dictionaryFile.readLong();
 
-                entryptr = ByteBuffer.wrap(dataptr).getLong();
-                long size = ByteBuffer.wrap(datasize).getLong();
-
-                if (dataptr == null || entryptr < 0 || datasize == null || size <= 0) {
+                if (entryptr < 0 || size <= 0) {
                     // System.out.println("Entry not found: " + token);
-                    return new Entry(token, -1, "");
+                    return new Entry(token, -1, -1, 0, 0, 0);
                 }
 
-                data = readData(entryptr, (int) size);
-
-                // System.out.println("Read: " + data + " at: " + ptr + " with size: " + size);
+                dataFile.seek(entryptr);
+                if (dataFile.readInt() == tokenBytes.length) {
+                    byte[] found = new byte[tokenBytes.length];
+                    dataFile.readFully(found);
+                    if (Arrays.equals(found, tokenBytes)) {
+                        return new Entry(token, entryptr, posptr, size, df, cf);
+                    }
+                }
 
                 // was a collision
                 ptr = fixHash(ptr, counter);
                 counter++;
             }
-
-            data = data.substring(token.length() + 1); // remove token from data
-            return new Entry(token, entryptr, data);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -259,7 +554,7 @@ public class PersistentHashedIndex implements Index {
     }
 
     private long fixHash(long ptr, int counter) {
-        return (((ptr + (long) counter * (long) counter)) % TABLESIZE) * (Long.BYTES * 2);
+        return ((ptr / ENTRYSIZE + (long) counter * (long) counter) % TABLESIZE) * ENTRYSIZE;
     }
 
     // ==================================================================
@@ -311,6 +606,7 @@ public class PersistentHashedIndex implements Index {
 
             // Write the dictionary and the postings list
             long entryptr = 0;
+            long posptr = 0;
 
             int counter = 0;
             for (Map.Entry<String, PostingsList> value : index.entrySet()) {
@@ -319,15 +615,14 @@ public class PersistentHashedIndex implements Index {
 
                 String key = value.getKey();
                 PostingsList list = value.getValue();
-                String listString = key + ";" + list.toString() + "\n";
-                long hashed = (hash(key) % TABLESIZE) * (Long.BYTES * 2); // 2 longs for ptr and size
-                Entry entry = new Entry(key, entryptr, listString);
+                byte[] docs = encodeDocs(key, list);
+                byte[] positions = encodePositions(list);
+                long hashed = (hash(key) % TABLESIZE) * ENTRYSIZE;
+                Entry entry = new Entry(key, entryptr, posptr, docs, list.size(), list.totalFrequency());
 
                 // Check for collisions
                 int probCounter = 1;
                 while (isEntryCollision(hashed)) { // if there is a collision get new hash
-                    // System.out.println("Collision at: " + hashed / (Long.BYTES * 2) + " with key:
-                    // " + key);
                     hashed = fixHash(hashed, probCounter);
 
                     collisions++;
@@ -335,12 +630,11 @@ public class PersistentHashedIndex implements Index {
                 }
 
                 writeEntry(entry, hashed);
-                writeData(listString, entryptr);
+                writeData(dataFile, docs, entryptr);
+                writeData(positionsFile, positions, posptr);
 
-                // System.out.println("Key: " + key + " Hashed: " + hashed + " Entryptr: " +
-                // entryptr + "listStr: "
-                // + list.toString());
                 entryptr += entry.byteSize;
+                posptr += positions.length;
 
                 counter++;
             }
@@ -368,12 +662,35 @@ public class PersistentHashedIndex implements Index {
      * if the term is not in the index.
      */
     public PostingsList getPostings(String token) {
-        Entry entry = readEntry(token, (hash(token) % TABLESIZE) * (Long.BYTES * 2));
+        Entry entry = readEntry(token, (hash(token) % TABLESIZE) * ENTRYSIZE);
         return entry.getPostingsList();
 
         // return null;
     }
 
+    /**
+     * Returns an iterator streaming the postings of a term from disk.
+     */
+    public PostingsIterator iterator(String token) {
+        Entry entry = readEntry(token, (hash(token) % TABLESIZE) * ENTRYSIZE);
+        if (entry == null || entry.ptr == -1) {
+            return PostingsIterator.empty();
+        }
+        return new DiskPostingsIterator(entry, token.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    /**
+     * Returns df and cf of a term from its dictionary entry, without
+     * reading the postings.
+     */
+    public TermStatistics getStatistics(String token) {
+        Entry entry = readEntry(token, (hash(token) % TABLESIZE) * ENTRYSIZE);
+        if (entry == null || entry.ptr == -1) {
+            return new TermStatistics(0, 0);
+        }
+        return new TermStatistics(entry.df, entry.cf);
+    }
+
     public HashMap<String, PostingsList> getLoadedIndex() {
         return index;
     }
@@ -0,0 +1,96 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Matches the documents where the sub-iterators occur at consecutive
+ * positions, in the given order. The positions of a match are the positions
+ * of its last word, so that phrases can be nested.
+ */
+public class PhraseIterator extends PostingsIterator {
+
+    private final List<PostingsIterator> subs;
+
+    private final ConjunctionIterator conjunction;
+
+    private int[] positions;
+
+    private int nextPosition;
+
+    public PhraseIterator(List<PostingsIterator> subs) {
+        this.subs = subs;
+        this.conjunction = new ConjunctionIterator(subs);
+    }
+
+    public int docID() {
+        return conjunction.docID();
+    }
+
+    public int nextDoc() {
+        return doNext(conjunction.nextDoc());
+    }
+
+    public int advance(int target) {
+        return doNext(conjunction.advance(target));
+    }
+
+    /**
+     * Skips the documents where all words occur but not as a phrase.
+     */
+    private int doNext(int doc) {
+        while (doc != NO_MORE_DOCS) {
+            positions = phrasePositions();
+            nextPosition = 0;
+            if (positions.length > 0) {
+                return doc;
+            }
+            doc = conjunction.nextDoc();
+        }
+        return NO_MORE_DOCS;
+    }
+
+    /**
+     * Keeps the positions p of the first word for which word i occurs at
+     * p + i, and returns the position of the last word for each of them.
+     */
+    private int[] phrasePositions() {
+        int[] candidates = subs.get(0).positions();
+        int count = candidates.length;
+        for (int i = 1; i < subs.size() && count > 0; i++) {
+            int[] next = subs.get(i).positions();
+            int kept = 0;
+            int k = 0;
+            for (int c = 0; c < count; c++) {
+                int wanted = candidates[c] + 1;
+                while (k < next.length && next[k] < wanted) {
+                    k++;
+                }
+                if (k < next.length && next[k] == wanted) {
+                    candidates[kept++] = wanted;
+                }
+            }
+            count = kept;
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+
+    public int freq() {
+        return positions.length;
+    }
+
+    public int nextPosition() {
+        return positions[nextPosition++];
+    }
+
+    public long cost() {
+        return conjunction.cost();
+    }
+}
@@ -0,0 +1,26 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.util.ArrayList;
+
+/**
+ * Something that can decode the positions of one posting on request.
+ * Postings read from disk only carry a docID and a term frequency; the
+ * positions are fetched through this interface the first time they are
+ * needed (i.e. by phrase queries).
+ */
+public interface PositionsReader {
+
+    /**
+     * Reads <code>count</code> positions starting at <code>ptr</code> in the
+     * positions stream.
+     */
+    public ArrayList<Integer> readPositions(long ptr, int count);
+
+}
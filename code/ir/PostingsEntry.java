@@ -17,6 +17,15 @@ public class PostingsEntry implements Comparable<PostingsEntry>, Serializable {
 
     private ArrayList<Integer> offsets = new ArrayList<Integer>();
 
+    /** Term frequency, used while the offsets have not been decoded yet. */
+    private int frequency = 0;
+
+    /** Where the offsets of this posting start in the positions stream. */
+    private long positionsPtr = -1;
+
+    /** Decodes the offsets on request; null if they are already in memory. */
+    private transient PositionsReader positionsReader = null;
+
     public PostingsEntry(int docID, double score, int offset) {
         this.docID = docID;
         this.score = score;
@@ -29,6 +38,30 @@ public class PostingsEntry implements Comparable<PostingsEntry>, Serializable {
         this.offsets = offsets;
     }
 
+    /**
+     * Creates a posting whose offsets stay on disk until
+     * {@link #getOffsets()} is called.
+     */
+    public PostingsEntry(int docID, int frequency, long positionsPtr, PositionsReader positionsReader) {
+        this.docID = docID;
+        this.frequency = frequency;
+        this.positionsPtr = positionsPtr;
+        this.positionsReader = positionsReader;
+        this.offsets = null;
+    }
+
+    /**
+     * Copies a posting. Decoded offsets are shared, undecoded ones stay lazy.
+     */
+    public PostingsEntry(PostingsEntry other) {
+        this.docID = other.docID;
+        this.score = other.score;
+        this.offsets = other.offsets;
+        this.frequency = other.frequency;
+        this.positionsPtr = other.positionsPtr;
+        this.positionsReader = other.positionsReader;
+    }
+
     /**
      * PostingsEntries are compared by their score (only relevant
      * in ranked retrieval).
@@ -42,15 +75,26 @@ public class PostingsEntry implements Comparable<PostingsEntry>, Serializable {
 
     // mine
     public void addOffset(int offset) {
-        offsets.add(offset);
+        getOffsets().add(offset);
     }
 
     public void addOffsets(ArrayList<Integer> offsets) {
-        this.offsets.addAll(offsets);
+        getOffsets().addAll(offsets);
     }
 
     public int getOffset(int i) {
-        return offsets.get(i);
+        return getOffsets().get(i);
+    }
+
+    /**
+     * Returns the number of occurrences of the term in this document
+     * without decoding the offsets.
+     */
+    public int getFrequency() {
+        if (offsets != null) {
+            return offsets.size();
+        }
+        return frequency;
     }
 
     public void setScore(double score) {
@@ -58,6 +102,10 @@ public class PostingsEntry implements Comparable<PostingsEntry>, Serializable {
     }
 
     public ArrayList<Integer> getOffsets() {
+        if (offsets == null) {
+            offsets = positionsReader.readPositions(positionsPtr, frequency);
+            positionsReader = null;
+        }
         return offsets;
     }
 
@@ -0,0 +1,204 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Walks through a postings list one document at a time, in increasing
+ * docID order. Positions are only decoded for the current document, and
+ * only if someone asks for them.
+ *
+ * Before the first call to nextDoc() or advance() the iterator stands on
+ * docID -1; when it is exhausted it stands on NO_MORE_DOCS.
+ */
+public abstract class PostingsIterator {
+
+    /** The docID of an exhausted iterator. */
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    /** Number of postings decoded or probed so far (for EXPLAIN). */
+    protected long touched = 0;
+
+    /** Returns the current docID. */
+    public abstract int docID();
+
+    /** Moves to the next document and returns its docID. */
+    public abstract int nextDoc();
+
+    /**
+     * Moves to the first document whose docID is at least
+     * <code>target</code> and returns its docID. The target must be
+     * larger than the current docID.
+     */
+    public int advance(int target) {
+        int doc = docID();
+        while (doc < target) {
+            doc = nextDoc();
+        }
+        return doc;
+    }
+
+    /** Returns the number of positions in the current document. */
+    public abstract int freq();
+
+    /**
+     * Returns the next position in the current document, in increasing
+     * order. May be called at most freq() times per document.
+     */
+    public abstract int nextPosition();
+
+    /** Returns an upper bound of the number of documents (the df for a term). */
+    public abstract long cost();
+
+    /**
+     * Returns the number of postings this iterator has decoded or probed.
+     * Only iterators that read postings count; operators return 0.
+     */
+    public long postingsTouched() {
+        return touched;
+    }
+
+    /**
+     * Reads all remaining positions of the current document.
+     */
+    public int[] positions() {
+        int[] positions = new int[freq()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = nextPosition();
+        }
+        return positions;
+    }
+
+    /**
+     * Merges the positions of all iterators in <code>subs</code> that stand
+     * on <code>doc</code> into one sorted array. A position found by
+     * several of them is kept once for each, so the array is as long as
+     * the sum of their freqs.
+     */
+    static int[] mergePositions(List<PostingsIterator> subs, int doc) {
+        int count = 0;
+        int[][] all = new int[subs.size()][];
+        for (int i = 0; i < subs.size(); i++) {
+            if (subs.get(i).docID() == doc) {
+                all[i] = subs.get(i).positions();
+                count += all[i].length;
+            }
+        }
+        int[] merged = new int[count];
+        int k = 0;
+        for (int[] positions : all) {
+            if (positions != null) {
+                System.arraycopy(positions, 0, merged, k, positions.length);
+                k += positions.length;
+            }
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    /**
+     * Returns an iterator over all docIDs 0 .. numDocs - 1, without
+     * positions. Used as the base of purely negated queries.
+     */
+    public static PostingsIterator all(int numDocs) {
+        return new PostingsIterator() {
+            int doc = -1;
+
+            public int docID() {
+                return doc;
+            }
+
+            public int nextDoc() {
+                return advance(doc + 1);
+            }
+
+            public int advance(int target) {
+                return doc = target < numDocs ? target : NO_MORE_DOCS;
+            }
+
+            public int freq() {
+                return 0;
+            }
+
+            public int nextPosition() {
+                return -1;
+            }
+
+            public long cost() {
+                return numDocs;
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator over sorted docIDs and their term frequencies,
+     * without positions.
+     */
+    public static PostingsIterator of(int[] docs, int[] freqs) {
+        return new PostingsIterator() {
+            int i = -1;
+
+            public int docID() {
+                return i < 0 ? -1 : i < docs.length ? docs[i] : NO_MORE_DOCS;
+            }
+
+            public int nextDoc() {
+                if (i < docs.length) {
+                    i++;
+                    touched++;
+                }
+                return docID();
+            }
+
+            public int freq() {
+                return freqs[i];
+            }
+
+            public int nextPosition() {
+                return -1;
+            }
+
+            public long cost() {
+                return docs.length;
+            }
+        };
+    }
+
+    /** Returns an iterator without documents, e.g. for unknown terms. */
+    public static PostingsIterator empty() {
+        return new PostingsIterator() {
+            int doc = -1;
+
+            public int docID() {
+                return doc;
+            }
+
+            public int nextDoc() {
+                return doc = NO_MORE_DOCS;
+            }
+
+            public int advance(int target) {
+                return doc = NO_MORE_DOCS;
+            }
+
+            public int freq() {
+                return 0;
+            }
+
+            public int nextPosition() {
+                return -1;
+            }
+
+            public long cost() {
+                return 0;
+            }
+        };
+    }
+}
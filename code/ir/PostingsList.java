@@ -22,6 +22,15 @@ public class PostingsList {
         return list.size();
     }
 
+    /** Total number of occurrences over all postings in this list. */
+    public long totalFrequency() {
+        long total = 0;
+        for (int i = 0; i < list.size(); i++) {
+            total += list.get(i).getFrequency();
+        }
+        return total;
+    }
+
     /** Returns the ith posting. */
     public PostingsEntry get(int i) {
         return list.get(i);
@@ -51,7 +60,13 @@ public class PostingsList {
 
     public void add(PostingsEntry entry) {
         // list.add(entry);
-        list.add(new PostingsEntry(entry.docID, entry.score, entry.getOffsets()));
+        list.add(new PostingsEntry(entry));
+    }
+
+    /** Appends an entry as is, without copying it. */
+    public void append(PostingsEntry entry) {
+        list.add(entry);
+        lastDocID = entry.docID;
     }
 
     public void addOffsetToLast(int offset) {
@@ -75,6 +90,18 @@ public class PostingsList {
         return s;
     }
 
+    /**
+     * Gives every posting the docID newID[docID] and puts the list back in
+     * docID order.
+     */
+    public void renumber(int[] newID) {
+        for (int i = 0; i < list.size(); i++) {
+            list.get(i).docID = newID[list.get(i).docID];
+        }
+        list.sort((a, b) -> Integer.compare(a.docID, b.docID));
+        lastDocID = list.isEmpty() ? -1 : list.get(list.size() - 1).docID;
+    }
+
     public void sort() {
         list.sort((a, b) -> {
             return Double.compare(b.score, a.score);
@@ -55,6 +55,12 @@ public class Query {
      */
     public ArrayList<QueryTerm> queryterm = new ArrayList<QueryTerm>();
 
+    /**
+     * The query string this Query was created from. Boolean queries are
+     * parsed from it, since the terms above lose the operators.
+     */
+    public String text = "";
+
     /**
      * Relevance feedback constant alpha (= weight of original query terms).
      * Should be between 0 and 1.
@@ -79,6 +85,7 @@ public class Query {
      * Creates a new Query from a string of words
      */
     public Query(String queryString) {
+        text = queryString;
         StringTokenizer tok = new StringTokenizer(queryString);
         while (tok.hasMoreTokens()) {
             queryterm.add(new QueryTerm(tok.nextToken(), alpha));
@@ -108,6 +115,7 @@ public class Query {
      */
     public Query copy() {
         Query queryCopy = new Query();
+        queryCopy.text = text;
         for (QueryTerm t : queryterm) {
             queryCopy.queryterm.add(new QueryTerm(t.term, t.weight));
         }
@@ -135,20 +143,30 @@ public class Query {
         }
         // System.err.println(docIsRelevant.length + " " + results.size());
 
-        for (int i = 0; i < docIsRelevant.length; i++) {
+        int[] relevant = new int[numRelevant];
+        for (int i = 0, k = 0; i < docIsRelevant.length; i++) {
             if (docIsRelevant[i]) {
-                ArrayList<String> contents = getDocContent(results.get(i).docID, engine);
-                for (int j = 0; j < contents.size(); j++) {
-                    int index = find(contents.get(j));
-                    if (index != -1) {
-                        queryterm.get(index).weight += beta * (1 / numRelevant);
-                    } else {
-                        queryterm.add(new QueryTerm(contents.get(j), beta * (1 / numRelevant)));
-                    }
-
-                }
+                relevant[k++] = results.get(i).docID;
             }
         }
+
+        ForwardIndex forward = engine.indexer.forwardIndex;
+        if (forward != null) {
+            new FeedbackEngine(forward, FeedbackEngine.M).expand(this, relevant, alpha, beta);
+            return;
+        }
+
+        // No forward index on disk: tokenize the relevant documents into
+        // vectors of their own, and take the document frequencies from the index
+        ForwardIndex vectors = new ForwardIndex();
+        for (int docID : relevant) {
+            vectors.add(docID, getDocContent(docID, engine));
+        }
+        int[] df = new int[vectors.numTerms()];
+        for (int t = 0; t < df.length; t++) {
+            df[t] = engine.index.getStatistics(vectors.term(t)).df;
+        }
+        new FeedbackEngine(vectors, df, FeedbackEngine.M).expand(this, relevant, alpha, beta);
     }
 
     private ArrayList<String> getDocContent(int docID, Engine engine) {
@@ -165,19 +183,9 @@ public class Query {
         } catch (IOException e) {
             System.err.println("Error reading file: " + Index.docNames.get(docID));
         }
-        System.err.println("DEBUG: content: " + contents.toString());
         return contents;
     }
 
-    private int find(String term) {
-        for (int i = 0; i < queryterm.size(); i++) {
-            if (queryterm.get(i).term.equals(term)) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
     private int countTrue(boolean[] docIsRelevant) {
         int count = 0;
         for (int i = 0; i < docIsRelevant.length; i++) {
@@ -0,0 +1,160 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A node in the operator tree of a boolean query. The tree is compiled into
+ * a tree of PostingsIterators that is evaluated one document at a time.
+ */
+public abstract class QueryNode {
+
+    /**
+     * Compiles this node into an iterator.
+     *
+     * @param terms   Gives the iterator of a single (possibly wildcard) term.
+     * @param numDocs Number of documents in the index, used when a query
+     *                has nothing but negated parts.
+     */
+    public abstract PostingsIterator compile(Function<String, PostingsIterator> terms, int numDocs);
+
+    /** A single word. */
+    public static class Term extends QueryNode {
+        final String term;
+
+        public Term(String term) {
+            this.term = term;
+        }
+
+        public PostingsIterator compile(Function<String, PostingsIterator> terms, int numDocs) {
+            return terms.apply(term);
+        }
+
+        public String toString() {
+            return term;
+        }
+    }
+
+    /** Words that must occur next to each other, in order. */
+    public static class Phrase extends QueryNode {
+        final List<String> words;
+
+        public Phrase(List<String> words) {
+            this.words = words;
+        }
+
+        public PostingsIterator compile(Function<String, PostingsIterator> terms, int numDocs) {
+            ArrayList<PostingsIterator> its = new ArrayList<PostingsIterator>();
+            for (String word : words) {
+                its.add(terms.apply(word));
+            }
+            return its.size() == 1 ? its.get(0) : new PhraseIterator(its);
+        }
+
+        public String toString() {
+            return "\"" + String.join(" ", words) + "\"";
+        }
+    }
+
+    /** Matches if the child does not; only meaningful below an And. */
+    public static class Not extends QueryNode {
+        final QueryNode child;
+
+        public Not(QueryNode child) {
+            this.child = child;
+        }
+
+        /**
+         * A negation on its own excludes from all documents, which are
+         * walked in order rather than collected.
+         */
+        public PostingsIterator compile(Function<String, PostingsIterator> terms, int numDocs) {
+            return new ExclusionIterator(PostingsIterator.all(numDocs), child.compile(terms, numDocs));
+        }
+
+        public String toString() {
+            return "NOT " + child;
+        }
+    }
+
+    /**
+     * Matches if all positive children match and no negated one does.
+     * The conjunction orders its children by cost, and the negated
+     * children are applied as an exclusion on its candidates.
+     */
+    public static class And extends QueryNode {
+        final List<QueryNode> children;
+
+        public And(List<QueryNode> children) {
+            this.children = children;
+        }
+
+        public PostingsIterator compile(Function<String, PostingsIterator> terms, int numDocs) {
+            ArrayList<PostingsIterator> include = new ArrayList<PostingsIterator>();
+            ArrayList<PostingsIterator> exclude = new ArrayList<PostingsIterator>();
+            for (QueryNode child : children) {
+                if (child instanceof Not) {
+                    exclude.add(((Not) child).child.compile(terms, numDocs));
+                } else {
+                    include.add(child.compile(terms, numDocs));
+                }
+            }
+            PostingsIterator it;
+            if (include.isEmpty()) {
+                it = PostingsIterator.all(numDocs);
+            } else if (include.size() == 1) {
+                it = include.get(0);
+            } else {
+                it = new ConjunctionIterator(include);
+            }
+            if (exclude.isEmpty()) {
+                return it;
+            }
+            return new ExclusionIterator(it, exclude.size() == 1 ? exclude.get(0) : new DisjunctionIterator(exclude));
+        }
+
+        public String toString() {
+            return "(" + join(children, " AND ") + ")";
+        }
+    }
+
+    /** Matches if any child matches. */
+    public static class Or extends QueryNode {
+        final List<QueryNode> children;
+
+        public Or(List<QueryNode> children) {
+            this.children = children;
+        }
+
+        public PostingsIterator compile(Function<String, PostingsIterator> terms, int numDocs) {
+            ArrayList<PostingsIterator> its = new ArrayList<PostingsIterator>();
+            for (QueryNode child : children) {
+                its.add(child.compile(terms, numDocs));
+            }
+            return new DisjunctionIterator(its);
+        }
+
+        public String toString() {
+            return "(" + join(children, " OR ") + ")";
+        }
+    }
+
+    static String join(List<QueryNode> nodes, String separator) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < nodes.size(); i++) {
+            if (i > 0) {
+                sb.append(separator);
+            }
+            sb.append(nodes.get(i));
+        }
+        return sb.toString();
+    }
+}
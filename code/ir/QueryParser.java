@@ -0,0 +1,135 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.util.ArrayList;
+
+/**
+ * Parses boolean queries such as
+ *
+ *   (housing OR apartment) AND "uc davis" NOT parking
+ *
+ * into a tree of QueryNodes. The operators AND, OR and NOT must be written
+ * in upper case; everything else is lower-cased. Words next to each other
+ * without an operator are AND-ed, and AND binds tighter than OR.
+ *
+ *   or    := and ( OR and )*
+ *   and   := unary ( [AND] unary )*
+ *   unary := NOT unary | '(' or ')' | '"' word+ '"' | word
+ */
+public class QueryParser {
+
+    private final ArrayList<String> tokens = new ArrayList<String>();
+
+    private int next = 0;
+
+    private QueryParser(String query) {
+        int i = 0;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '"') {
+                int end = query.indexOf('"', i + 1);
+                if (end == -1) {
+                    throw new IllegalArgumentException("Unterminated phrase: " + query.substring(i));
+                }
+                tokens.add(query.substring(i, end + 1));
+                i = end + 1;
+            } else {
+                int start = i;
+                while (i < query.length() && !Character.isWhitespace(query.charAt(i))
+                        && "()\"".indexOf(query.charAt(i)) == -1) {
+                    i++;
+                }
+                tokens.add(query.substring(start, i));
+            }
+        }
+    }
+
+    /**
+     * Parses a query string.
+     *
+     * @throws IllegalArgumentException if the query is malformed.
+     */
+    public static QueryNode parse(String query) {
+        QueryParser parser = new QueryParser(query);
+        if (parser.tokens.isEmpty()) {
+            throw new IllegalArgumentException("Empty query");
+        }
+        QueryNode node = parser.parseOr();
+        if (parser.next < parser.tokens.size()) {
+            throw new IllegalArgumentException("Unexpected '" + parser.tokens.get(parser.next) + "'");
+        }
+        return node;
+    }
+
+    private String peek() {
+        return next < tokens.size() ? tokens.get(next) : null;
+    }
+
+    private QueryNode parseOr() {
+        ArrayList<QueryNode> children = new ArrayList<QueryNode>();
+        children.add(parseAnd());
+        while ("OR".equals(peek())) {
+            next++;
+            children.add(parseAnd());
+        }
+        return children.size() == 1 ? children.get(0) : new QueryNode.Or(children);
+    }
+
+    private QueryNode parseAnd() {
+        ArrayList<QueryNode> children = new ArrayList<QueryNode>();
+        children.add(parseUnary());
+        while (peek() != null && !"OR".equals(peek()) && !")".equals(peek())) {
+            if ("AND".equals(peek())) {
+                next++;
+            }
+            children.add(parseUnary());
+        }
+        return children.size() == 1 ? children.get(0) : new QueryNode.And(children);
+    }
+
+    private QueryNode parseUnary() {
+        String token = peek();
+        if (token == null) {
+            throw new IllegalArgumentException("Unexpected end of query");
+        }
+        next++;
+        if (token.equals("NOT")) {
+            return new QueryNode.Not(parseUnary());
+        }
+        if (token.equals("(")) {
+            QueryNode node = parseOr();
+            if (!")".equals(peek())) {
+                throw new IllegalArgumentException("Missing ')'");
+            }
+            next++;
+            return node;
+        }
+        if (token.equals(")") || token.equals("AND") || token.equals("OR")) {
+            throw new IllegalArgumentException("Unexpected '" + token + "'");
+        }
+        if (token.startsWith("\"")) {
+            ArrayList<String> words = new ArrayList<String>();
+            for (String word : token.substring(1, token.length() - 1).toLowerCase().split("\\s+")) {
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+            if (words.isEmpty()) {
+                throw new IllegalArgumentException("Empty phrase");
+            }
+            return new QueryNode.Phrase(words);
+        }
+        return new QueryNode.Term(token.toLowerCase());
+    }
+}
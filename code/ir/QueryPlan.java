@@ -0,0 +1,133 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The evaluation plan of a query, as chosen by the QueryPlanner: for each
+ * query term how its postings are accessed, whether it is pruned, and how
+ * many postings it is expected to touch. The leaf iterators opened while
+ * the plan is executed are kept, so that EXPLAIN can print the estimated
+ * next to the actual number of postings touched.
+ */
+public class QueryPlan {
+
+    /** How the postings of a step are accessed. */
+    public enum Access {
+        /** The shortest list, which drives a conjunction. */
+        LEAD,
+        /** Stepping through the list, one posting at a time. */
+        LINEAR_MERGE,
+        /** Exponential search in an in-memory list. */
+        GALLOPING,
+        /** Probing a (cached) bitmap of the documents. */
+        BITMAP,
+        /** Every posting is read and scored (ranked retrieval). */
+        SCORED
+    }
+
+    /** Strategy for dropping work in ranked retrieval. */
+    public enum Pruning {
+        NONE,
+        /** Terms occurring in most documents are left out of the score. */
+        LOW_IDF
+    }
+
+    /** One query term (or one wildcard) of the plan. */
+    public static class Step {
+        /** The term as written in the query. */
+        final String term;
+        /** The index terms it stands for (more than one for a wildcard). */
+        final List<String> terms;
+        final double weight;
+        final int df;
+        final long cf;
+        final double idf;
+        Access access = Access.LINEAR_MERGE;
+        boolean pruned = false;
+        long estimated = 0;
+        final ArrayList<PostingsIterator> leaves = new ArrayList<PostingsIterator>();
+
+        Step(String term, List<String> terms, double weight, int df, long cf, double idf) {
+            this.term = term;
+            this.terms = terms;
+            this.weight = weight;
+            this.df = df;
+            this.cf = cf;
+            this.idf = idf;
+        }
+
+        /** Postings touched by the iterators opened for this step. */
+        long actual() {
+            long actual = 0;
+            for (PostingsIterator leaf : leaves) {
+                actual += leaf.postingsTouched();
+            }
+            return actual;
+        }
+    }
+
+    final QueryType queryType;
+
+    final int numDocs;
+
+    /** The steps, in query order (phrases need it). */
+    final ArrayList<Step> steps = new ArrayList<Step>();
+
+    Pruning pruning = Pruning.NONE;
+
+    QueryPlan(QueryType queryType, int numDocs) {
+        this.queryType = queryType;
+        this.numDocs = numDocs;
+    }
+
+    /** Returns the steps that are not pruned. */
+    List<Step> activeSteps() {
+        ArrayList<Step> active = new ArrayList<Step>();
+        for (Step step : steps) {
+            if (!step.pruned) {
+                active.add(step);
+            }
+        }
+        return active;
+    }
+
+    /**
+     * Returns a printable description of the plan, with estimated and actual
+     * postings touched per step.
+     */
+    public String explain() {
+        StringBuilder sb = new StringBuilder();
+        int pruned = 0;
+        for (Step step : steps) {
+            if (step.pruned) {
+                pruned++;
+            }
+        }
+        sb.append(String.format("EXPLAIN %s over %d documents, pruning %s%s%n", queryType, numDocs, pruning,
+                pruning == Pruning.NONE ? "" : " (" + pruned + " of " + steps.size() + " terms dropped)"));
+        sb.append(String.format("  %-20s %8s %10s %7s %-13s %10s %10s%n",
+                "term", "df", "cf", "idf", "access", "estimated", "actual"));
+        long estimated = 0;
+        long actual = 0;
+        for (Step step : steps) {
+            String term = step.terms.size() > 1 ? step.term + " (" + step.terms.size() + " terms)" : step.term;
+            sb.append(String.format("  %-20s %8d %10d %7.3f %-13s %10s %10d%n", term, step.df, step.cf, step.idf,
+                    step.pruned ? "PRUNED" : step.access.toString(),
+                    step.pruned ? "-" : Long.toString(step.estimated), step.actual()));
+            if (!step.pruned) {
+                estimated += step.estimated;
+            }
+            actual += step.actual();
+        }
+        sb.append(String.format("  postings touched: estimated %d, actual %d", estimated, actual));
+        return sb.toString();
+    }
+}
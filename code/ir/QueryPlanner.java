@@ -0,0 +1,163 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Chooses how a query is evaluated from the df and cf of its terms, which
+ * are read from the dictionary without fetching any postings.
+ *
+ * For conjunctions (intersection and phrase queries) the shortest list
+ * leads. Every other list is accessed in the cheapest of three ways:
+ * through a cached bitmap if the term is very frequent (not for phrases,
+ * which need positions), by galloping if it is much longer than the lead
+ * and the index is in memory, and by a linear merge otherwise.
+ *
+ * For ranked queries every posting is scored. If pruning is turned on,
+ * long queries (e.g. after wildcard expansion) drop the terms that occur
+ * in most documents, since their idf contributes little to the score.
+ * This changes the ranking, so it is off by default.
+ *
+ * A biword strategy for phrases is not offered, since there is no biword
+ * index in this engine.
+ */
+public class QueryPlanner {
+
+    /** Terms in at least 1/BITMAP_DENSITY of the documents use a bitmap. */
+    static final int BITMAP_DENSITY = 8;
+
+    /** Gallop through lists at least this many times longer than the lead. */
+    static final int GALLOP_RATIO = 8;
+
+    /** Ranked queries with more terms than this may be pruned. */
+    static final int PRUNE_MIN_TERMS = 4;
+
+    /** Terms in more than this fraction of the documents are pruned. */
+    static final double PRUNE_DF_FRACTION = 0.5;
+
+    Index index;
+
+    /** Expands a query term (possibly a wildcard) to index terms. */
+    Function<String, List<String>> expander;
+
+    /** Whether the postings are in memory, which makes galloping possible. */
+    boolean randomAccess;
+
+    /** Whether long ranked queries may drop their low-idf terms. */
+    boolean pruning = false;
+
+    public QueryPlanner(Index index, Function<String, List<String>> expander, boolean randomAccess) {
+        this.index = index;
+        this.expander = expander;
+        this.randomAccess = randomAccess;
+    }
+
+    public void setPruning(boolean pruning) {
+        this.pruning = pruning;
+    }
+
+    /**
+     * Plans a query.
+     *
+     * @param cachedBitmaps Terms whose bitmap is already built.
+     */
+    public QueryPlan plan(Query query, QueryType queryType, RankingType rankingType, Set<String> cachedBitmaps) {
+        int N = Index.docNames.size();
+        QueryPlan plan = new QueryPlan(queryType, N);
+
+        boolean ranked = queryType == QueryType.RANKED_QUERY;
+        for (int i = 0; i < query.queryterm.size(); i++) {
+            Query.QueryTerm qt = query.queryterm.get(i);
+            List<String> terms = expander.apply(qt.term);
+            if (ranked) {
+                // every expanded term is scored with its own idf
+                for (String term : terms) {
+                    ArrayList<String> single = new ArrayList<String>();
+                    single.add(term);
+                    plan.steps.add(step(term, single, qt.weight, N));
+                }
+            } else {
+                plan.steps.add(step(qt.term, terms, qt.weight, N));
+            }
+        }
+
+        if (ranked) {
+            // PageRank alone does not use idf, so nothing can be pruned
+            planRanked(plan, N, pruning && rankingType != RankingType.PAGERANK);
+        } else {
+            planConjunction(plan, N, queryType == QueryType.PHRASE_QUERY, cachedBitmaps);
+        }
+        return plan;
+    }
+
+    private QueryPlan.Step step(String term, List<String> terms, double weight, int N) {
+        int df = 0;
+        long cf = 0;
+        for (String t : terms) {
+            TermStatistics stats = index.getStatistics(t);
+            df += stats.df;
+            cf += stats.cf;
+        }
+        double idf = df == 0 ? 0 : Math.log((double) N / Math.min(df, N));
+        return new QueryPlan.Step(term, terms, weight, df, cf, idf);
+    }
+
+    private void planConjunction(QueryPlan plan, int N, boolean phrase, Set<String> cachedBitmaps) {
+        QueryPlan.Step lead = null;
+        for (QueryPlan.Step step : plan.steps) {
+            if (lead == null || step.df < lead.df) {
+                lead = step;
+            }
+        }
+        if (lead == null) {
+            return;
+        }
+        lead.access = QueryPlan.Access.LEAD;
+        lead.estimated = lead.df;
+        for (QueryPlan.Step step : plan.steps) {
+            if (step == lead) {
+                continue;
+            }
+            if (!phrase && (long) step.df * BITMAP_DENSITY >= N) {
+                step.access = QueryPlan.Access.BITMAP;
+                step.estimated = lead.df + (cachedBitmaps.contains(step.term) ? 0 : step.df);
+            } else if (randomAccess && step.df >= (long) GALLOP_RATIO * Math.max(1, lead.df)) {
+                step.access = QueryPlan.Access.GALLOPING;
+                double gap = (double) step.df / Math.max(1, lead.df);
+                step.estimated = (long) Math.ceil(2 * lead.df * (Math.log(gap) / Math.log(2) + 1));
+            } else {
+                step.access = QueryPlan.Access.LINEAR_MERGE;
+                step.estimated = step.df;
+            }
+        }
+    }
+
+    private void planRanked(QueryPlan plan, int N, boolean prune) {
+        int frequent = 0;
+        for (QueryPlan.Step step : plan.steps) {
+            step.access = QueryPlan.Access.SCORED;
+            step.estimated = step.df;
+            if (step.df > PRUNE_DF_FRACTION * N) {
+                frequent++;
+            }
+        }
+        // Prune only long queries, and never every term
+        if (prune && plan.steps.size() > PRUNE_MIN_TERMS && frequent > 0 && frequent < plan.steps.size()) {
+            plan.pruning = QueryPlan.Pruning.LOW_IDF;
+            for (QueryPlan.Step step : plan.steps) {
+                if (step.df > PRUNE_DF_FRACTION * N) {
+                    step.pruned = true;
+                }
+            }
+        }
+    }
+}
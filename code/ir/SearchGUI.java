@@ -62,13 +62,17 @@ public class SearchGUI extends JFrame {
     JMenu normalizationMenu = new JMenu( "Normalization" );
     JMenu structureMenu = new JMenu( "Text structure" );
     JMenuItem saveItem = new JMenuItem( "Save index and exit" );
+    JCheckBoxMenuItem explainItem = new JCheckBoxMenuItem( "Explain query plan" );
     JMenuItem quitItem = new JMenuItem( "Quit" );
     JRadioButtonMenuItem intersectionItem = new JRadioButtonMenuItem( "Intersection query" );
     JRadioButtonMenuItem phraseItem = new JRadioButtonMenuItem( "Phrase query" );
     JRadioButtonMenuItem rankedItem = new JRadioButtonMenuItem( "Ranked retrieval" );
+    JRadioButtonMenuItem booleanItem = new JRadioButtonMenuItem( "Boolean query" );
     JRadioButtonMenuItem tfidfItem = new JRadioButtonMenuItem( "tf-idf" );
     JRadioButtonMenuItem pagerankItem = new JRadioButtonMenuItem( "PageRank" );
     JRadioButtonMenuItem combinationItem = new JRadioButtonMenuItem( "Combination" );
+    JRadioButtonMenuItem hitsItem = new JRadioButtonMenuItem( "HITS" );
+    JRadioButtonMenuItem bm25Item = new JRadioButtonMenuItem( "BM25" );
     JRadioButtonMenuItem numberOfWordsItem = new JRadioButtonMenuItem( "Number of words" );
     JRadioButtonMenuItem euclideanLengthItem = new JRadioButtonMenuItem( "Euclidean length" );
     ButtonGroup queries = new ButtonGroup();
@@ -107,17 +111,25 @@ public class SearchGUI extends JFrame {
         optionsMenu.add( intersectionItem );
         optionsMenu.add( phraseItem );
         optionsMenu.add( rankedItem );
+        optionsMenu.add( booleanItem );
+        optionsMenu.addSeparator();
+        optionsMenu.add( explainItem );
         rankingMenu.add( tfidfItem );
         rankingMenu.add( pagerankItem );
         rankingMenu.add( combinationItem );
+        rankingMenu.add( hitsItem );
+        rankingMenu.add( bm25Item );
         normalizationMenu.add(numberOfWordsItem);
         normalizationMenu.add(euclideanLengthItem);
         queries.add( intersectionItem );
         queries.add( phraseItem );
         queries.add( rankedItem );
+        queries.add( booleanItem );
         ranking.add( tfidfItem );
         ranking.add( pagerankItem );
         ranking.add( combinationItem );
+        ranking.add( hitsItem );
+        ranking.add( bm25Item );
         normalization.add(numberOfWordsItem);
         normalization.add(euclideanLengthItem);
         intersectionItem.setSelected( true );
@@ -154,6 +166,10 @@ public class SearchGUI extends JFrame {
                 displayInfoText( " " );
                 // Turn the search string into a Query
                 String queryString = queryWindow.getText().toLowerCase().trim();
+                // Boolean queries keep their case, since the operators are upper case
+                if ( queryType == QueryType.BOOLEAN_QUERY ) {
+                    queryString = queryWindow.getText().trim();
+                }
                 query = new Query( queryString );
                 // Take relevance feedback from the user into account (assignment 3)
                 // Check which documents the user has marked as relevant.
@@ -236,6 +252,13 @@ public class SearchGUI extends JFrame {
             };
         rankedItem.addActionListener( setRankedQuery );
 
+        Action setBooleanQuery = new AbstractAction() {
+            public void actionPerformed( ActionEvent e ) {
+                queryType = QueryType.BOOLEAN_QUERY;
+            }
+            };
+        booleanItem.addActionListener( setBooleanQuery );
+
         Action setTfidfRanking = new AbstractAction() {
             public void actionPerformed( ActionEvent e ) {
                 rankingType = RankingType.TF_IDF;
@@ -258,6 +281,20 @@ public class SearchGUI extends JFrame {
             };
         combinationItem.addActionListener( setCombinationRanking );
 
+        Action setHITSRanking = new AbstractAction() {
+            public void actionPerformed( ActionEvent e ) {
+                rankingType = RankingType.HITS;
+            }
+            };
+        hitsItem.addActionListener( setHITSRanking );
+
+        Action setBM25Ranking = new AbstractAction() {
+            public void actionPerformed( ActionEvent e ) {
+                rankingType = RankingType.BM25;
+            }
+            };
+        bm25Item.addActionListener( setBM25Ranking );
+
         Action setNumberOfWordsNormalization = new AbstractAction() {
             public void actionPerformed( ActionEvent e ) {
                 normType = NormalizationType.NUMBER_OF_WORDS;
@@ -272,6 +309,13 @@ public class SearchGUI extends JFrame {
             };
         euclideanLengthItem.addActionListener( setEuclideanNormalization );
 
+        Action setExplain = new AbstractAction() {
+            public void actionPerformed( ActionEvent e ) {
+                engine.searcher.setExplain( explainItem.isSelected() );
+            }
+            };
+        explainItem.addActionListener( setExplain );
+
     }
 
 
@@ -7,8 +7,15 @@
 
 package ir;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Searches an index for results of a query.
@@ -23,15 +30,91 @@ public class Searcher {
 
     PageRank pagerank;
 
+    /** Ranks by hubs and authorities, made when first asked for. */
+    HITSRanker hits;
+
+    /** Chooses the evaluation order and algorithms of each query */
+    QueryPlanner planner;
+
+    /** At most this many bitmaps of frequent terms are cached. */
+    static final int MAX_BITMAPS = 32;
+
+    /** Bitmaps of frequent terms, built the first time a plan asks for one. */
+    HashMap<String, BitSet> bitmaps = new HashMap<String, BitSet>();
+
+    /** The leaf iterators opened by the current query (for EXPLAIN). */
+    ArrayList<PostingsIterator> opened = new ArrayList<PostingsIterator>();
+
+    /** Weight of the PageRank score when ranking by combination. */
+    double pageRankWeight = 1000;
+
+    /** Weight of the tf-idf score when ranking by combination. */
+    double tfidfWeight = 1;
+
+    /**
+     * If true, the PageRank of a query is a blend of the topic-sensitive
+     * PageRanks, weighted by how many pages of each topic hold the query terms.
+     */
+    boolean topicSensitive = false;
+
+    /** The docIDs of the pages of each topic, sorted. */
+    int[][] topicDocs;
+
+    /** For each term, the share of the pages of each topic holding it. */
+    HashMap<String, float[]> topicTerms;
+
+    /**
+     * Whether topicTerms has every term of a topic page. If not, the
+     * shares of a term are counted from its postings when first asked for.
+     */
+    boolean topicTermsComplete = false;
+
+    /** The term vectors of the documents, or null. */
+    ForwardIndex forwardIndex;
+
+    /** The first tier of the index, or null to always use the full lists. */
+    ChampionLists champions;
+
+    /** Ranked queries with fewer results than this from the champion tier use the full lists. */
+    int championK = 10;
+
+    /**
+     * Share of championBound the championK-th champion tier result needs
+     * for the full lists to be skipped. At 1 no document outside the
+     * champion lists can enter the top championK; lower values trade
+     * accuracy for speed.
+     */
+    double championThreshold = 1;
+
+    /** Number of top tf-idf documents making the root set of HITS. */
+    int hitsRootSize = 200;
+
+    /** Weight of the authority score when ranking by HITS. */
+    double authorityWeight = 1;
+
+    /** Time a HITS query may spend iterating, in milliseconds. */
+    long hitsBudgetMillis = 50;
+
+    /** Whether the plan of each query is printed (EXPLAIN). */
+    boolean explain = false;
+
+    /** Collection statistics, norms and parameters of BM25 ranking. */
+    BM25 bm25 = new BM25();
+
     /** Constructor */
     public Searcher(Index index, KGramIndex kgIndex) {
         this.index = index;
         this.kgIndex = kgIndex;
         this.pagerank = new PageRank();
+        this.planner = new QueryPlanner(index, this::expandTerm, index instanceof HashedIndex);
     }
 
     /**
      * Searches the index for postings matching the query.
+     *
+     * When explaining is on (see setExplain), the query is run as usual and
+     * its plan is printed with the estimated and actual number of postings
+     * touched.
      * 
      * @return A postings list representing the result of the query.
      */
@@ -39,35 +122,164 @@ public class Searcher {
         if (query.queryterm == null || query.queryterm.size() == 0) {
             return null;
         }
+        boolean explain = this.explain;
         PrintSearchedTerms(query);
+        opened.clear();
 
         // testing
         // pagerank.printTop30();
 
+        if (queryType == QueryType.BOOLEAN_QUERY) {
+            long startTime = System.nanoTime();
+            PostingsList answer = BooleanQuery(query, explain);
+            if (explain) {
+                long actual = 0;
+                for (PostingsIterator leaf : opened) {
+                    actual += leaf.postingsTouched();
+                }
+                System.err.printf("  postings touched: actual %d, %.3f ms%n", actual,
+                        (System.nanoTime() - startTime) / 1e6);
+            }
+            return answer;
+        }
+
+        long startTime = System.nanoTime();
+        QueryPlan plan = planner.plan(query, queryType, rankingType, bitmaps.keySet());
+        PostingsList answer = null;
         switch (queryType) {
             case PHRASE_QUERY:
-                return ContiguousAll(query);
+                answer = ContiguousAll(plan);
+                break;
             case INTERSECTION_QUERY:
-                return IntersectAll(query);
+                answer = IntersectAll(plan);
+                break;
             case RANKED_QUERY:
-                return RankedAll(query, rankingType, normType);
+                answer = RankedAll(plan, rankingType, normType);
+                break;
             // return Ranked(query, 0);
             default:
                 break;
         }
+        if (explain) {
+            System.err.println(plan.explain());
+            System.err.printf("  %d results in %.3f ms%n", answer == null ? 0 : answer.size(),
+                    (System.nanoTime() - startTime) / 1e6);
+        }
+
+        return answer;
+    }
+
+    /**
+     * Sets the weights of the PageRank and tf-idf scores used when ranking
+     * by combination.
+     */
+    public void setCombinationWeights(double pageRankWeight, double tfidfWeight) {
+        this.pageRankWeight = pageRankWeight;
+        this.tfidfWeight = tfidfWeight;
+    }
+
+    /**
+     * Lets long ranked queries drop the terms occurring in most documents
+     * (see QueryPlanner). Off by default, since it changes the ranking.
+     */
+    public void setPruning(boolean pruning) {
+        planner.setPruning(pruning);
+    }
+
+    /**
+     * Prints the plan of every following query to stderr, together with
+     * the postings it touched and the time it took.
+     */
+    public void setExplain(boolean explain) {
+        this.explain = explain;
+    }
 
-        return null;
+    /**
+     * Sets the time a HITS query may spend iterating before it uses the
+     * scores it has.
+     */
+    public void setHITSBudget(long budgetMillis) {
+        this.hitsBudgetMillis = budgetMillis;
     }
 
-    private PostingsList RankedAll(Query query, RankingType rankingType, NormalizationType normType) {
+    /**
+     * Sets k and the threshold of the champion tier: a ranked query skips
+     * the full lists if its k-th champion result scores at least threshold
+     * times the bound on documents outside the champion lists.
+     */
+    public void setChampions(int k, double threshold) {
+        this.championK = k;
+        this.championThreshold = threshold;
+    }
+
+    /**
+     * Picks the champions of every term by tf times PageRank, and saves
+     * them next to the index.
+     */
+    public void buildChampionLists(Collection<String> terms) {
+        long start = System.nanoTime();
+        champions = ChampionLists.build(index, terms, pageRankScores(), ChampionLists.R);
+        System.err.printf("Built champion lists of %d terms, %d postings, in %.1f ms%n",
+                          champions.numTerms(), champions.size, (System.nanoTime() - start) / 1e6);
+        try {
+            champions.write(PersistentHashedIndex.INDEXDIR + "/" + ChampionLists.FNAME);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void readChampionLists() {
+        try {
+            champions = ChampionLists.read(PersistentHashedIndex.INDEXDIR + "/" + ChampionLists.FNAME);
+        } catch (FileNotFoundException e) {
+            System.err.println("No champion lists, ranked queries use the full lists");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Sets the tf saturation k1 and the length normalization b of BM25.
+     * Takes effect from the next query, without reindexing.
+     */
+    public void setBM25(double k1, double b) {
+        bm25.setParameters(k1, b);
+    }
+
+    /**
+     * Takes the BM25 collection statistics and document norms from the
+     * document lengths, once the index is built or loaded.
+     */
+    public void joinDocLengths() {
+        bm25.join(Index.docLengths);
+    }
+
+    /**
+     * Sets the term vectors used to count the terms of the topic pages
+     * when the topics are joined.
+     */
+    public void setForwardIndex(ForwardIndex forwardIndex) {
+        this.forwardIndex = forwardIndex;
+    }
+
+    public void setTopicSensitive(boolean topicSensitive) {
+        this.topicSensitive = topicSensitive;
+    }
+
+    private PostingsList RankedAll(QueryPlan plan, RankingType rankingType, NormalizationType normType) {
         switch (rankingType) {
             case TF_IDF:
-                return RankedAllTF_IDF(query, normType);
+                // the champions are picked by PageRank, which says nothing about tf-idf
+                return RankedAllScores(plan, normType, 1, 0);
             case PAGERANK:
-                return RankedAllPageRank(query);
+                return RankedTiered(plan, normType, 0, 1);
             // return RankedPageRank(query, 0);
             case COMBINATION:
-                return RankedAllComb(query, normType, 1000, 1);
+                return RankedTiered(plan, normType, tfidfWeight, pageRankWeight);
+            case HITS:
+                return RankedHITS(plan, normType);
+            case BM25:
+                return RankedBM25(plan);
             default:
                 break;
         }
@@ -75,292 +287,479 @@ public class Searcher {
         return new PostingsList();
     }
 
-    private PostingsList RankedAllComb(Query query, NormalizationType normType, double prMult, double tfidfMult) {
-        PostingsList answerPR = RankedAllPageRank(query);
-        PostingsList answerTF_IDF = RankedAllTF_IDF(query, normType);
-        PostingsList answer = Combine(answerPR, answerTF_IDF, prMult, tfidfMult);
+    /**
+     * Collects the documents of the champion lists first and scores them
+     * against the full lists of all query terms, since a document may be
+     * a champion of one term and still contain another. The full lists are
+     * only scored as a whole unless the championK-th result beats
+     * championThreshold times what a document outside all champion lists
+     * can score (see championBound).
+     */
+    private PostingsList RankedTiered(QueryPlan plan, NormalizationType normType, double tfidfMult, double prMult) {
+        // a topic blend is not what the champions were picked by
+        if (champions != null && !topicSensitive && championK > 0) {
+            PostingsList candidates = RankedAllScores(plan, normType, tfidfMult, prMult, true, null);
+            if (candidates.size() >= championK) {
+                int[] docs = new int[candidates.size()];
+                for (int i = 0; i < docs.length; i++) {
+                    docs[i] = candidates.get(i).docID;
+                }
+                Arrays.sort(docs);
+                PostingsList answer = RankedAllScores(plan, normType, tfidfMult, prMult, false, docs);
+                if (answer.get(championK - 1).score >= championThreshold * championBound(plan, normType, tfidfMult, prMult)) {
+                    return answer;
+                }
+            }
+            for (QueryPlan.Step step : plan.steps) {
+                step.leaves.clear();
+            }
+        }
+        return RankedAllScores(plan, normType, tfidfMult, prMult, false, null);
+    }
 
-        answer.sort();
-        return answer;
+    /**
+     * Returns an upper bound on the score of a document that is in no
+     * champion list of the query. Its PageRank is at most the largest
+     * cutoff of the query terms, since tf is at least 1, and a term adds
+     * at most idf times its weight to the tf-idf, since tf is at most the
+     * document length (at most its weight with euclidean lengths).
+     */
+    private double championBound(QueryPlan plan, NormalizationType normType, double tfidfMult, double prMult) {
+        double cutoff = 0;
+        double weight = 0;
+        double tfidf = 0;
+        for (QueryPlan.Step step : plan.activeSteps()) {
+            if (step.df == 0) {
+                continue;
+            }
+            for (String term : step.terms) {
+                cutoff = Math.max(cutoff, champions.cutoff(term));
+            }
+            weight = Math.max(weight, step.weight);
+            tfidf += normType == NormalizationType.NUMBER_OF_WORDS ? step.idf * step.weight : step.weight;
+        }
+        return (tfidfMult == 0 ? 0 : tfidfMult * tfidf) + (prMult == 0 ? 0 : prMult * weight * cutoff);
     }
 
-    private PostingsList Combine(PostingsList a, PostingsList b, double aMult, double bMult) {
+    /**
+     * Scores document at a time: the iterators of all query terms are
+     * walked together, and each document gets
+     *
+     *   tfidfMult * (sum of the tf-idf of the terms standing on it)
+     *   + prMult * (PageRank of the document)
+     *
+     * in one pass. Terms pruned by the plan are not read at all.
+     */
+    private PostingsList RankedAllScores(QueryPlan plan, NormalizationType normType, double tfidfMult, double prMult) {
+        return RankedAllScores(plan, normType, tfidfMult, prMult, false, null);
+    }
+
+    /**
+     * As above, reading the champion lists of the terms instead of their
+     * full lists if fromChampions is true, and scoring only the sorted
+     * docIDs in <code>only</code> if it is not null.
+     */
+    private PostingsList RankedAllScores(QueryPlan plan, NormalizationType normType, double tfidfMult, double prMult, boolean fromChampions, int[] only) {
+        float[] pr = prMult == 0 ? null : pageRankScores();
+        List<QueryPlan.Step> steps = plan.activeSteps();
+        double[] topicWeights = prMult == 0 ? null : topicWeights(steps);
+        float[] topics = topicWeights == null ? null : Index.staticScores.get(StaticScores.TOPICS);
+        int k = topicWeights == null ? 0 : topicWeights.length;
+        ArrayList<PostingsIterator> its = new ArrayList<PostingsIterator>();
+        double[] weights = new double[steps.size()];
+        for (int i = 0; i < steps.size(); i++) {
+            its.add(fromChampions ? openChampions(steps.get(i)) : open(steps.get(i)));
+            weights[i] = steps.get(i).idf * steps.get(i).weight;
+        }
+
         PostingsList answer = new PostingsList();
-        for (int i = 0; i < a.size(); i++) {
-            for (int j = 0; j < b.size(); j++) {
-                if (a.get(i).docID == b.get(j).docID) {
-                    double score = aMult * a.get(i).score + bMult * b.get(j).score;
-                    answer.add(a.get(i).docID, 0, score);
+        PostingsIterator union = new DisjunctionIterator(its);
+        if (only != null) {
+            union = new ConjunctionIterator(Arrays.asList(PostingsIterator.of(only, new int[only.length]), union));
+        }
+        for (int doc = union.nextDoc(); doc != PostingsIterator.NO_MORE_DOCS; doc = union.nextDoc()) {
+            double tfidf = 0;
+            double weight = 0;
+            for (int i = 0; i < its.size(); i++) {
+                if (its.get(i).docID() == doc) {
+                    tfidf += its.get(i).freq() * weights[i];
+                    weight = Math.max(weight, steps.get(i).weight);
+                }
+            }
+            double score = 0;
+            if (tfidfMult != 0) {
+                score += tfidfMult * tfidf / docLength(doc, normType);
+            }
+            if (topics != null) {
+                double blend = 0;
+                for (int t = 0; t < k; t++) {
+                    blend += topicWeights[t] * topics[doc * k + t];
                 }
+                score += prMult * weight * blend;
+            } else if (prMult != 0) {
+                score += prMult * weight * pr[doc];
             }
+            answer.add(doc, 0, score);
         }
 
+        answer.sort();
         return answer;
     }
 
-    private PostingsList RankedAllPageRank(Query query) {
-        PostingsList answer = RankedPageRank(query, 0);
-        if (answer == null) {
-            answer = new PostingsList();
+    /**
+     * Scores document at a time by BM25 (see BM25). The length
+     * normalization is BM25's own, so normType is not used.
+     */
+    private PostingsList RankedBM25(QueryPlan plan) {
+        if (!bm25.isJoined()) {
+            joinDocLengths();
         }
-        for (int i = 1; i < query.queryterm.size(); i++) {
-            PostingsList next = RankedPageRank(query, i);
-            answer.merge(next, 1);
+        List<QueryPlan.Step> steps = plan.activeSteps();
+        ArrayList<PostingsIterator> its = new ArrayList<PostingsIterator>();
+        double[] weights = new double[steps.size()];
+        for (int i = 0; i < steps.size(); i++) {
+            its.add(open(steps.get(i)));
+            weights[i] = bm25.idf(steps.get(i).df) * steps.get(i).weight;
+        }
+
+        PostingsList answer = new PostingsList();
+        DisjunctionIterator union = new DisjunctionIterator(its);
+        for (int doc = union.nextDoc(); doc != PostingsIterator.NO_MORE_DOCS; doc = union.nextDoc()) {
+            double score = 0;
+            for (int i = 0; i < its.size(); i++) {
+                if (its.get(i).docID() == doc) {
+                    score += bm25.score(doc, its.get(i).freq(), weights[i]);
+                }
+            }
+            answer.add(doc, 0, score);
         }
 
         answer.sort();
         return answer;
     }
 
-    private PostingsList RankedPageRank(Query query, int j) {
-        PostingsList answer = getWildPostings(query.queryterm.get(j).term, false);
-        for (int i = 0; i < answer.size(); i++) {
-            String docFile = index.docNames.get(answer.get(i).docID).substring("./../davisWiki/".length()); // FIX: now
-                                                                                                            // it is
-                                                                                                            // hardcod
-            // System.out.println("DEBUG: docFile: " + docFile);
-            double score = pagerank.getScore(docFile);
-            // answer.get(i).setScore(score);
-            answer.get(i).setScore(score * query.queryterm.get(j).weight);
+    /**
+     * Takes the top hitsRootSize documents by tf-idf as the root set, and
+     * ranks its base set by tf-idf and authority (see HITSRanker.rank).
+     */
+    private PostingsList RankedHITS(QueryPlan plan, NormalizationType normType) {
+        PostingsList tfidf = RankedAllScores(plan, normType, 1, 0);
+        PostingsList roots = new PostingsList();
+        for (int i = 0; i < Math.min(hitsRootSize, tfidf.size()); i++) {
+            roots.add(tfidf.get(i).docID, 0, tfidf.get(i).score);
         }
-
+        long start = System.nanoTime();
+        PostingsList answer = hits().rank(roots, tfidfWeight, 0, authorityWeight, hitsBudgetMillis * 1000000L);
+        System.err.printf("HITS: %d roots, %d ranked in %.1f ms%n", roots.size(), answer.size(), (System.nanoTime() - start) / 1e6);
         return answer;
     }
 
-    private PostingsList RankedAllTF_IDF(Query oldQuery, NormalizationType normType) {
-        Query query = expandWildQuery(oldQuery);
-        // System.err.println("DEBUG: expanded query size: " + query.queryterm.size());
-        // System.err.println("DEBUG: expanded query: " + query.queryterm.toString());
-
-        PostingsList answer = RankedTF_IDF(query.queryterm.get(0), normType);
-        if (answer == null) {
-            answer = new PostingsList();
-        }
-        for (int i = 1; i < query.queryterm.size(); i++) {
-            PostingsList next = RankedTF_IDF(query.queryterm.get(i), normType);
-            if (next == null) {
-                continue;
-            }
-            // answer.merge(next, 0);
-            answer = Union(answer, next, false);
+    private HITSRanker hits() {
+        if (hits == null) {
+            hits = new HITSRanker("./data/linksDavis.txt", "./data/davisTitles.txt", index);
         }
+        return hits;
+    }
 
-        System.err.println("DEBUG: answer size: " + answer.size());
-
-        answer.sort();
-        return answer;
+    /**
+     * Stores the global hub and authority scores of every indexed document
+     * as static score columns, computing and saving them first if they
+     * have not been.
+     */
+    public void joinHITS() {
+        if (!hits().readScores()) {
+            hits().rank();
+        }
+        Index.staticScores.put(StaticScores.HUBS, hits().docScores(StaticScores.HUBS, Index.docNames));
+        Index.staticScores.put(StaticScores.AUTHORITIES, hits().docScores(StaticScores.AUTHORITIES, Index.docNames));
     }
 
-    private PostingsList RankedTF_IDF(Query.QueryTerm qTerm, NormalizationType normType) {
-        int N = Index.docNames.size();
-        PostingsList answer = index.getPostings(qTerm.term);
-        if (answer == null) {
-            return new PostingsList();
+    /**
+     * Returns the PageRank of every docID, joining the PageRank vector to
+     * the docIDs the first time it is needed.
+     */
+    private float[] pageRankScores() {
+        if (!Index.staticScores.has(StaticScores.PAGERANK)) {
+            joinPageRank();
         }
-        // PostingsList answer = getWildPostings(query.queryterm.get(j).term);
-        int df_t = answer.size();
-        double idf_t = Math.log((double) N / (double) df_t);
-        // System.out.println("DEBUG: idf_t: " + idf_t);
+        return Index.staticScores.get(StaticScores.PAGERANK);
+    }
 
-        for (int i = 0; i < df_t; i++) {
-            int tf_dt = answer.get(i).getOffsets().size();
-            // System.err.println("DEBUG: tf_dt: " + tf_dt);
+    /**
+     * Resolves the PageRank of every indexed document once, and stores it
+     * as a static score column.
+     */
+    public void joinPageRank() {
+        Index.staticScores.put(StaticScores.PAGERANK, pagerank.docScores(Index.docNames));
+    }
 
-            double len_d = 0;
-            if (normType == NormalizationType.NUMBER_OF_WORDS) {
-                len_d = Index.docLengths.get(answer.get(i).docID);
-            } else {
-                len_d = Index.docEucLengths.get(answer.get(i).docID);
+    /**
+     * Returns the weight of each topic for a query: the share of the pages
+     * of the topic holding a query term, summing to 1. Returns null when
+     * topic-sensitive ranking is off or no topic matches, and the global
+     * PageRank is used instead.
+     */
+    private double[] topicWeights(List<QueryPlan.Step> steps) {
+        if (!topicSensitive || !joinTopics()) {
+            return null;
+        }
+        double[] weights = new double[topicDocs.length];
+        double sum = 0;
+        for (QueryPlan.Step step : steps) {
+            for (String term : step.terms) {
+                float[] shares = topicShares(term);
+                if (shares == null) {
+                    continue;
+                }
+                for (int t = 0; t < topicDocs.length; t++) {
+                    double share = step.weight * shares[t];
+                    weights[t] += share;
+                    sum += share;
+                }
             }
+        }
+        if (sum == 0) {
+            return null;
+        }
+        for (int t = 0; t < weights.length; t++) {
+            weights[t] /= sum;
+        }
+        return weights;
+    }
 
-            double tf_idf_dt = tf_dt * idf_t * qTerm.weight / (double) len_d;
-            answer.get(i).setScore(tf_idf_dt);
+    /**
+     * Joins the topic-sensitive PageRanks to the docIDs the first time they
+     * are needed. Returns false if none have been computed.
+     */
+    private boolean joinTopics() {
+        if (topicDocs == null) {
+            if (pagerank.numTopics() == 0) {
+                pagerank.readTopics();
+            }
+            topicDocs = pagerank.topicSeedDocs(Index.docNames);
+            Index.staticScores.put(StaticScores.TOPICS, pagerank.docTopicScores(Index.docNames));
+            joinTopicTerms();
         }
-        return answer;
+        return topicDocs.length > 0;
     }
 
-    // 4 elements
-    // e.g. 0 to 1, 1 to 2, 2 to 3
-    private PostingsList IntersectAll(Query query) {
-        PostingsList answer = getWildPostings(query.queryterm.get(0).term, false);
-        if (answer == null) {
-            answer = new PostingsList();
+    /**
+     * Counts once which terms the pages of each topic hold, from the term
+     * vectors of the pages if there are any, or else from the postings of
+     * an index in memory.
+     */
+    private void joinTopicTerms() {
+        int k = topicDocs.length;
+        topicTerms = new HashMap<String, float[]>();
+        topicTermsComplete = true;
+        if (forwardIndex != null) {
+            int[] termIDs = new int[16];
+            int[] freqs = new int[16];
+            for (int t = 0; t < k; t++) {
+                for (int doc : topicDocs[t]) {
+                    if (termIDs.length < forwardIndex.size(doc)) {
+                        termIDs = new int[2 * forwardIndex.size(doc)];
+                        freqs = new int[termIDs.length];
+                    }
+                    int n = forwardIndex.vector(doc, termIDs, freqs);
+                    for (int j = 0; j < n; j++) {
+                        topicTerms.computeIfAbsent(forwardIndex.term(termIDs[j]), term -> new float[k])[t]++;
+                    }
+                }
+            }
+        } else if (!index.getLoadedIndex().isEmpty()) {
+            BitSet[] members = new BitSet[k];
+            for (int t = 0; t < k; t++) {
+                members[t] = new BitSet();
+                for (int doc : topicDocs[t]) {
+                    members[t].set(doc);
+                }
+            }
+            for (Map.Entry<String, PostingsList> e : index.getLoadedIndex().entrySet()) {
+                PostingsList list = e.getValue();
+                for (int i = 0; i < list.size(); i++) {
+                    int doc = list.get(i).docID;
+                    for (int t = 0; t < k; t++) {
+                        if (members[t].get(doc)) {
+                            topicTerms.computeIfAbsent(e.getKey(), term -> new float[k])[t]++;
+                        }
+                    }
+                }
+            }
+        } else {
+            topicTermsComplete = false;
+            return;
         }
-        for (int i = 1; i < query.queryterm.size(); i++) {
-            PostingsList next = getWildPostings(query.queryterm.get(i).term, false);
-            if (next == null) {
-                continue;
+        for (float[] counts : topicTerms.values()) {
+            for (int t = 0; t < k; t++) {
+                counts[t] /= Math.max(topicDocs[t].length, 1);
             }
-            answer = Intersect(answer, next);
         }
-
-        return answer;
     }
 
-    // TIme complexity O(n + m)
-    private PostingsList Intersect(PostingsList p1, PostingsList p2) {
-        PostingsList answer = new PostingsList();
-        int i = 0;
-        int j = 0;
-        while (i < p1.size() && j < p2.size()) {
-            if (p1.get(i).docID == p2.get(j).docID) {
-                answer.add(p1.get(i).docID, 0, 0);
-                i++;
-                j++;
-            } else if (p1.get(i).docID < p2.get(j).docID) {
-                i++;
-            } else {
-                j++;
+    /**
+     * Returns the share of the pages of each topic holding a term, or null
+     * if no topic page holds it.
+     */
+    private float[] topicShares(String term) {
+        if (topicTermsComplete || topicTerms.containsKey(term)) {
+            return topicTerms.get(term);
+        }
+        // an index on disk without term vectors: walk the postings once
+        float[] shares = new float[topicDocs.length];
+        boolean found = false;
+        for (int t = 0; t < topicDocs.length; t++) {
+            PostingsIterator it = index.iterator(term);
+            int matches = 0;
+            for (int doc : topicDocs[t]) {
+                int at = it.docID() < doc ? it.advance(doc) : it.docID();
+                if (at == PostingsIterator.NO_MORE_DOCS) {
+                    break;
+                }
+                if (at == doc) {
+                    matches++;
+                }
             }
+            shares[t] = (float) matches / Math.max(topicDocs[t].length, 1);
+            found |= matches > 0;
         }
+        topicTerms.put(term, found ? shares : null);
+        return found ? shares : null;
+    }
 
-        return answer;
+    private double docLength(int docID, NormalizationType normType) {
+        if (normType == NormalizationType.NUMBER_OF_WORDS) {
+            return Index.docLengths.get(docID);
+        } else {
+            return Index.docEucLengths.get(docID);
+        }
     }
 
-    private PostingsList ContiguousAll(Query query) {
-        PostingsList answer = getWildPostings(query.queryterm.get(0).term, true);
-        // PostingsList answer = index.getPostings(query.queryterm.get(0).term);
-        if (answer == null) {
-            answer = new PostingsList();
+    private PostingsList IntersectAll(QueryPlan plan) {
+        ArrayList<PostingsIterator> its = new ArrayList<PostingsIterator>();
+        for (QueryPlan.Step step : plan.steps) {
+            its.add(open(step));
         }
-        for (int i = 1; i < query.queryterm.size(); i++) {
-            PostingsList next = getWildPostings(query.queryterm.get(i).term, true);
-            // PostingsList next = index.getPostings(query.queryterm.get(i).term);
+        return collect(new ConjunctionIterator(its));
+    }
 
-            if (next == null) {
-                continue;
-            }
-            answer = Contiguous(answer, next);
+    /**
+     * Parses the query string into an operator tree and evaluates it one
+     * document at a time.
+     */
+    private PostingsList BooleanQuery(Query query, boolean explain) {
+        QueryNode tree;
+        try {
+            tree = QueryParser.parse(query.text);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Could not parse query: " + e.getMessage());
+            return null;
         }
+        if (explain) {
+            System.err.println("EXPLAIN " + tree);
+        }
+        return collect(tree.compile(this::getWildIterator, Index.docNames.size()));
+    }
 
-        return answer;
+    private PostingsList ContiguousAll(QueryPlan plan) {
+        ArrayList<PostingsIterator> its = new ArrayList<PostingsIterator>();
+        for (QueryPlan.Step step : plan.steps) {
+            its.add(open(step));
+        }
+        return collect(new PhraseIterator(its));
     }
 
-    private PostingsList Contiguous(PostingsList p1, PostingsList p2) {
-        PostingsList answer = new PostingsList();
-        int i = 0;
-        int j = 0;
-        while (i < p1.size() && j < p2.size()) {
-            if (p1.get(i).docID == p2.get(j).docID) {
-                ArrayList<Integer> offsets1 = p1.get(i).getOffsets();
-                ArrayList<Integer> offsets2 = p2.get(j).getOffsets();
-
-                int k = 0;
-                int l = 0;
-                while (k < offsets1.size() && l < offsets2.size()) {
-                    if (offsets1.get(k) + 1 == offsets2.get(l)) {
-                        answer.add(p1.get(i).docID, offsets2.get(l), 0);
-                        k++;
-                        l++;
-                    } else if (offsets1.get(k) < offsets2.get(l)) {
-                        k++;
-                    } else {
-                        l++;
-                    }
+    /**
+     * Opens the postings of a plan step the way the plan says: through a
+     * cached bitmap, galloping, or by a plain linear merge.
+     */
+    private PostingsIterator open(QueryPlan.Step step) {
+        if (step.access == QueryPlan.Access.BITMAP) {
+            BitSet bits = bitmaps.get(step.term);
+            if (bits == null) {
+                bits = BitSetIterator.toBitSet(openTerms(step, false));
+                if (bitmaps.size() >= MAX_BITMAPS) {
+                    bitmaps.clear();
                 }
-                i++;
-                j++;
-            } else if (p1.get(i).docID < p2.get(j).docID) {
-                i++;
-            } else {
-                j++;
+                bitmaps.put(step.term, bits);
             }
+            BitSetIterator it = new BitSetIterator(bits, step.df);
+            step.leaves.add(it);
+            return it;
         }
-
-        return answer;
+        return openTerms(step, step.access == QueryPlan.Access.GALLOPING);
     }
 
-    private PostingsList UnionAll(Query query, boolean addOffsets) {
-        PostingsList answer = index.getPostings(query.queryterm.get(0).term);
-        if (answer == null) {
-            answer = new PostingsList();
-        }
-        for (int i = 1; i < query.queryterm.size(); i++) {
-            PostingsList next = index.getPostings(query.queryterm.get(i).term);
-            if (next == null) {
-                continue;
+    private PostingsIterator openChampions(QueryPlan.Step step) {
+        ArrayList<PostingsIterator> its = new ArrayList<PostingsIterator>();
+        for (String term : step.terms) {
+            PostingsIterator it = champions.iterator(term);
+            if (it == null) {
+                it = PostingsIterator.empty();
             }
-            answer = Union(answer, next, addOffsets);
+            step.leaves.add(it);
+            its.add(it);
         }
-
-        return answer;
+        return its.size() == 1 ? its.get(0) : new DisjunctionIterator(its);
     }
 
-    private PostingsList Union(PostingsList p1, PostingsList p2, boolean addOffsets) {
-        PostingsList answer = new PostingsList();
-        int i = 0;
-        int j = 0;
-        while (i < p1.size() && j < p2.size()) {
-            if (p1.get(i).docID == p2.get(j).docID) {
-                answer.add(p1.get(i));
-                if (addOffsets == true) {
-                    if (!answer.get(answer.size() - 1).getOffsets().contains(p2.get(j).getOffsets().get(0))) {
-                        answer.get(answer.size() - 1).getOffsets().addAll(p2.get(j).getOffsets());
-                        answer.get(answer.size() - 1).getOffsets().sort((a, b) -> {
-                            return Integer.compare(a, b);
-                        });
-                    }
-                }
-                answer.get(answer.size() - 1).score += p2.get(j).score;
-
-                i++;
-                j++;
-            } else if (p1.get(i).docID < p2.get(j).docID) {
-                answer.add(p1.get(i));
-                i++;
-            } else {
-                answer.add(p2.get(j));
-                j++;
+    private PostingsIterator openTerms(QueryPlan.Step step, boolean galloping) {
+        ArrayList<PostingsIterator> its = new ArrayList<PostingsIterator>();
+        for (String term : step.terms) {
+            PostingsIterator it = index.iterator(term);
+            if (galloping && it instanceof ListPostingsIterator) {
+                ((ListPostingsIterator) it).setGalloping(true);
             }
+            step.leaves.add(it);
+            its.add(it);
         }
-        while (i < p1.size()) {
-            answer.add(p1.get(i));
-            i++;
-        }
-        while (j < p2.size()) {
-            answer.add(p2.get(j));
-            j++;
-        }
+        return its.size() == 1 ? its.get(0) : new DisjunctionIterator(its);
+    }
 
+    /**
+     * Reads the matching docIDs of an iterator into a postings list.
+     */
+    private PostingsList collect(PostingsIterator it) {
+        PostingsList answer = new PostingsList();
+        for (int doc = it.nextDoc(); doc != PostingsIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+            answer.add(doc, 0, 0);
+        }
         return answer;
     }
 
-    private PostingsList getWildPostings(String token, boolean addOffsets) {
+    /**
+     * Returns an iterator for a term; a wildcard term gives the union of
+     * all terms it expands to.
+     */
+    private PostingsIterator getWildIterator(String token) {
+        ArrayList<PostingsIterator> its = new ArrayList<PostingsIterator>();
+        for (String term : expandTerm(token)) {
+            PostingsIterator it = index.iterator(term);
+            opened.add(it);
+            its.add(it);
+        }
+        return its.size() == 1 ? its.get(0) : new DisjunctionIterator(its);
+    }
+
+    /**
+     * Returns the index terms a query term stands for: itself, or all
+     * terms matching it if it is a wildcard.
+     */
+    private List<String> expandTerm(String token) {
+        ArrayList<String> terms = new ArrayList<String>();
         int starIndex = token.indexOf("*");
         if (starIndex == -1) {
-            return index.getPostings(token);
+            terms.add(token);
+            return terms;
         }
         Query expanded = expandWild(token, starIndex);
 
         // PrintSearchedTerms(expanded);
-        if (expanded.queryterm.size() == 0) {
-            return new PostingsList();
+        for (int i = 0; i < expanded.queryterm.size(); i++) {
+            terms.add(expanded.queryterm.get(i).term);
         }
-        PostingsList answer = UnionAll(expanded, addOffsets);
         System.err.println("DEBUG: expanded size: " + expanded.queryterm.size());
-        System.err.println("DEBUG: expanded answer size: " + answer.size());
-        // System.err.println("DEBUG: expanded answer: " + answer.toString());
-
-        return answer;
-    }
-
-    private Query expandWildQuery(Query query) {
-        Query expanded = new Query();
-        for (int i = 0; i < query.queryterm.size(); i++) {
-            String token = query.queryterm.get(i).term;
-            int starIndex = token.indexOf("*");
-            if (starIndex == -1) {
-                expanded.queryterm.add(query.queryterm.get(i));
-                continue;
-            }
-
-            Query expandedToken = expandWild(token, starIndex);
-            for (int j = 0; j < expandedToken.queryterm.size(); j++) {
-                expanded.queryterm.add(expandedToken.queryterm.get(j));
-            }
-        }
-
-        return expanded;
+        return terms;
     }
 
     private Query expandWild(String token, int starIndex) {
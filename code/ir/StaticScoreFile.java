@@ -0,0 +1,235 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A file of float score columns aligned to the nodes of a graph, with a
+ * table from node names to node numbers. It is memory mapped when read,
+ * so scores are served straight from the page cache.
+ *
+ * Layout (big-endian):
+ *   header   int MAGIC, int VERSION, int numNodes, int numColumns,
+ *            int BLOCK_SIZE, int numBlocks, long columnsPtr, long namesPtr
+ *            numColumns column labels (DataOutput.writeUTF)
+ *   columns  numColumns x numNodes floats, one column after the other
+ *   names    int[numBlocks] block offsets, then the names sorted and
+ *            front-coded in blocks of BLOCK_SIZE: for each name
+ *            varint shared prefix, varint suffix length, suffix bytes,
+ *            varint node. The first name of a block shares nothing.
+ */
+public class StaticScoreFile {
+
+    static final int MAGIC = 0x53434f52; // "SCOR"
+
+    static final int VERSION = 1;
+
+    /** Number of names per front-coded block. */
+    static final int BLOCK_SIZE = 16;
+
+    private static final int HEADER_SIZE = 6 * Integer.BYTES + 2 * Long.BYTES;
+
+    final int numNodes;
+
+    final String[] labels;
+
+    private final MappedByteBuffer buffer;
+
+    private final FloatBuffer columns;
+
+    private final int numBlocks;
+
+    private final int blockIndexPtr;
+
+    private final int namesDataPtr;
+
+    private StaticScoreFile(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a score file");
+        }
+        numNodes = buffer.getInt(8);
+        labels = new String[buffer.getInt(12)];
+        numBlocks = buffer.getInt(20);
+        int columnsPtr = (int) buffer.getLong(24);
+        blockIndexPtr = (int) buffer.getLong(32);
+        namesDataPtr = blockIndexPtr + numBlocks * Integer.BYTES;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes(HEADER_SIZE, columnsPtr - HEADER_SIZE)));
+        for (int c = 0; c < labels.length; c++) {
+            labels[c] = in.readUTF();
+        }
+        columns = buffer.duplicate().position(columnsPtr).slice().asFloatBuffer();
+    }
+
+    /** Memory maps a score file. */
+    public static StaticScoreFile open(String filename) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+            return new StaticScoreFile(file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length()));
+        }
+    }
+
+    /**
+     * Writes a score file. names[i] is the name of node i, and every column
+     * has one score per node.
+     */
+    public static void write(String filename, String[] names, int numNodes, String[] labels, float[][] columns) throws IOException {
+        // the names in sorted order, as node numbers
+        Integer[] order = new Integer[numNodes];
+        byte[][] utf = new byte[numNodes][];
+        for (int i = 0; i < numNodes; i++) {
+            order[i] = i;
+            utf[i] = names[i].getBytes(StandardCharsets.UTF_8);
+        }
+        Arrays.sort(order, (x, y) -> Arrays.compareUnsigned(utf[x], utf[y]));
+        int numBlocks = (numNodes + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int[] blockPtr = new int[numBlocks];
+        ByteArrayOutputStream nameBytes = new ByteArrayOutputStream();
+        byte[] previous = new byte[0];
+        for (int k = 0; k < numNodes; k++) {
+            byte[] name = utf[order[k]];
+            int shared = 0;
+            if (k % BLOCK_SIZE == 0) {
+                blockPtr[k / BLOCK_SIZE] = nameBytes.size();
+            } else {
+                while (shared < name.length && shared < previous.length && name[shared] == previous[shared]) {
+                    shared++;
+                }
+            }
+            VariableByte.write(nameBytes, shared);
+            VariableByte.write(nameBytes, name.length - shared);
+            nameBytes.write(name, shared, name.length - shared);
+            VariableByte.write(nameBytes, order[k]);
+            previous = name;
+        }
+
+        ByteArrayOutputStream labelBytes = new ByteArrayOutputStream();
+        DataOutputStream labelOut = new DataOutputStream(labelBytes);
+        for (String label : labels) {
+            labelOut.writeUTF(label);
+        }
+        // keep the floats 4-byte aligned
+        while ((HEADER_SIZE + labelBytes.size()) % Float.BYTES != 0) {
+            labelOut.writeByte(0);
+        }
+        long columnsPtr = HEADER_SIZE + labelBytes.size();
+        long namesPtr = columnsPtr + (long) labels.length * numNodes * Float.BYTES;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(numNodes);
+            out.writeInt(labels.length);
+            out.writeInt(BLOCK_SIZE);
+            out.writeInt(numBlocks);
+            out.writeLong(columnsPtr);
+            out.writeLong(namesPtr);
+            labelBytes.writeTo(out);
+            for (float[] column : columns) {
+                for (int i = 0; i < numNodes; i++) {
+                    out.writeFloat(column[i]);
+                }
+            }
+            for (int ptr : blockPtr) {
+                out.writeInt(ptr);
+            }
+            nameBytes.writeTo(out);
+        }
+    }
+
+    /** Returns the number of the column with the given label, or -1. */
+    public int column(String label) {
+        for (int c = 0; c < labels.length; c++) {
+            if (labels[c].equals(label)) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    public float score(int column, int node) {
+        return columns.get(column * numNodes + node);
+    }
+
+    /** Copies a whole column into the heap. */
+    public float[] column(int column) {
+        float[] scores = new float[numNodes];
+        columns.get(column * numNodes, scores);
+        return scores;
+    }
+
+    /**
+     * Returns the node with the given name, or -1 if there is none. The
+     * block is found by binary search over the first name of each block.
+     */
+    public int node(String name) {
+        if (numNodes == 0) {
+            return -1;
+        }
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int lo = 0, hi = numBlocks - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            ByteBuffer b = block(mid);
+            VariableByte.read(b);
+            byte[] first = new byte[VariableByte.read(b)];
+            b.get(first);
+            if (Arrays.compareUnsigned(first, key) <= 0) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        ByteBuffer b = block(lo);
+        byte[] current = new byte[0];
+        for (int k = lo * BLOCK_SIZE; k < Math.min(numNodes, (lo + 1) * BLOCK_SIZE); k++) {
+            current = next(b, current);
+            int node = VariableByte.read(b);
+            if (Arrays.equals(current, key)) {
+                return node;
+            }
+        }
+        return -1;
+    }
+
+    /** Calls action with every name and its node, in name order. */
+    public void names(ObjIntConsumer<String> action) {
+        for (int blk = 0; blk < numBlocks; blk++) {
+            ByteBuffer b = block(blk);
+            byte[] current = new byte[0];
+            for (int k = blk * BLOCK_SIZE; k < Math.min(numNodes, (blk + 1) * BLOCK_SIZE); k++) {
+                current = next(b, current);
+                action.accept(new String(current, StandardCharsets.UTF_8), VariableByte.read(b));
+            }
+        }
+    }
+
+    private ByteBuffer block(int blk) {
+        return buffer.duplicate().position(namesDataPtr + buffer.getInt(blockIndexPtr + blk * Integer.BYTES));
+    }
+
+    /** Decodes the next name of a block, given the previous one. */
+    private static byte[] next(ByteBuffer b, byte[] previous) {
+        int shared = VariableByte.read(b);
+        int suffix = VariableByte.read(b);
+        byte[] name = Arrays.copyOf(previous, shared + suffix);
+        b.get(name, shared, suffix);
+        return name;
+    }
+
+    private byte[] bytes(int ptr, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(ptr, bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,70 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.util.HashMap;
+
+/**
+ * Query-independent scores of the documents, one float[] column per kind
+ * of score, indexed by docID. The columns are filled once (at indexing or
+ * loading time), so that ranking reads one array slot per posting.
+ */
+public class StaticScores {
+
+    /** The PageRank of each document. */
+    public static final String PAGERANK = "pagerank";
+
+    /**
+     * The topic-sensitive PageRanks of each document, the topics of a
+     * document next to each other.
+     */
+    public static final String TOPICS = "topics";
+
+    /** The global hub and authority scores of each document. */
+    public static final String HUBS = "hubs";
+    public static final String AUTHORITIES = "authorities";
+
+    /** The length of each document in tokens, for BM25. */
+    public static final String LENGTHS = "lengths";
+
+    private HashMap<String, float[]> columns = new HashMap<String, float[]>();
+
+    /** Returns a column, or null if it has not been filled. */
+    public float[] get(String name) {
+        return columns.get(name);
+    }
+
+    public void put(String name, float[] column) {
+        columns.put(name, column);
+    }
+
+    public boolean has(String name) {
+        return columns.containsKey(name);
+    }
+
+    /**
+     * Moves the scores of docID d to newID[d] in every column. Columns
+     * with several scores per document (like TOPICS) move them together.
+     */
+    public void permute(int[] newID) {
+        for (String name : columns.keySet().toArray(new String[0])) {
+            float[] column = columns.get(name);
+            int stride = column.length / Math.max(newID.length, 1);
+            if (stride == 0 || column.length != stride * newID.length) {
+                System.err.println("Cannot renumber static scores " + name + ", dropping them");
+                columns.remove(name);
+                continue;
+            }
+            float[] moved = new float[column.length];
+            for (int d = 0; d < newID.length; d++) {
+                System.arraycopy(column, d * stride, moved, newID[d] * stride, stride);
+            }
+            columns.put(name, moved);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+/**
+ * Statistics of one term that can be read from the dictionary without
+ * fetching its postings.
+ */
+public class TermStatistics {
+
+    /** Number of documents containing the term. */
+    public final int df;
+
+    /** Total number of occurrences of the term in the collection. */
+    public final long cf;
+
+    public TermStatistics(int df, long cf) {
+        this.df = df;
+        this.cf = cf;
+    }
+}
@@ -0,0 +1,131 @@
+/*  
+ *   This file is part of the computer assignment for the
+ *   Information Retrieval course at KTH.
+ * 
+ *   Johan Boye, 2017
+ */
+
+package ir;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Numbers names (of the nodes of a link graph) in order of first
+ * appearance. The name bytes are kept back to back in one array, and
+ * looked up through an open-addressing hash table of node numbers, so no
+ * object is created per name.
+ */
+public class TitleMap {
+
+    /** The bytes of all names, one after the other. */
+    private byte[] bytes = new byte[1 << 12];
+
+    /** Where the name of each node starts in bytes; node i ends at start[i+1]. */
+    private int[] start = new int[1 << 10];
+
+    /**
+     * The hash of the name in the high half of each slot and node number
+     * + 1 in the low half, 0 for an empty slot. Keeping the hash in the
+     * slot means that probing only touches the table.
+     */
+    private long[] table = new long[1 << 11];
+
+    private int size = 0;
+
+    public int size() {
+        return size;
+    }
+
+    /** Returns the node of a name, or -1 if it has not been added. */
+    public int get(byte[] name, int offset, int length) {
+        int hash = hash(name, offset, length);
+        int mask = table.length - 1;
+        for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            long entry = table[slot];
+            int node = (int) entry - 1;
+            if ((int) (entry >>> 32) == hash && equals(node, name, offset, length)) {
+                return node;
+            }
+        }
+        return -1;
+    }
+
+    public int get(String name) {
+        byte[] b = name.getBytes(StandardCharsets.UTF_8);
+        return get(b, 0, b.length);
+    }
+
+    /** Returns the node of a name, numbering it first if it is new. */
+    public int add(byte[] name, int offset, int length) {
+        int hash = hash(name, offset, length);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        for (; table[slot] != 0; slot = (slot + 1) & mask) {
+            long entry = table[slot];
+            int node = (int) entry - 1;
+            if ((int) (entry >>> 32) == hash && equals(node, name, offset, length)) {
+                return node;
+            }
+        }
+        int node = size++;
+        if (size + 1 > start.length) {
+            start = Arrays.copyOf(start, 2 * start.length);
+        }
+        int end = start[node];
+        if (end + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, end + length));
+        }
+        System.arraycopy(name, offset, bytes, end, length);
+        start[node + 1] = end + length;
+        table[slot] = ((long) hash << 32) | (node + 1);
+        if (2 * size > table.length) {
+            rehash();
+        }
+        return node;
+    }
+
+    /** Returns the name of a node. */
+    public String name(int node) {
+        return new String(bytes, start[node], start[node + 1] - start[node], StandardCharsets.UTF_8);
+    }
+
+    /** Returns the names of all nodes, by node number. */
+    public String[] names() {
+        String[] names = new String[size];
+        for (int i = 0; i < size; i++) {
+            names[i] = name(i);
+        }
+        return names;
+    }
+
+    private boolean equals(int node, byte[] name, int offset, int length) {
+        int from = start[node];
+        return start[node + 1] - from == length
+            && Arrays.equals(bytes, from, from + length, name, offset, offset + length);
+    }
+
+    private void rehash() {
+        long[] old = table;
+        table = new long[2 * old.length];
+        int mask = table.length - 1;
+        for (long entry : old) {
+            if (entry != 0) {
+                int slot = (int) (entry >>> 32) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = entry;
+            }
+        }
+    }
+
+    private static int hash(byte[] name, int offset, int length) {
+        int h = 0x811c9dc5;
+        for (int i = offset; i < offset + length; i++) {
+            h = (h ^ name[i]) * 0x01000193;
+        }
+        // spread the high bits into the low bits used by the table
+        return h ^ (h >>> 16);
+    }
+}
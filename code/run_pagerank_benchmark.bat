@@ -0,0 +1 @@
+java -cp classes -Xmx2g ir.PageRankBenchmark %*
\ No newline at end of file
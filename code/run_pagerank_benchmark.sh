@@ -0,0 +1,2 @@
+#!/bin/sh
+java -cp classes -Xmx2g ir.PageRankBenchmark "$@"